@@ -50,13 +50,13 @@
 package org.knime.semisupervised.nodes.activesearch;
 
 import java.util.ArrayList;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.Iterator;
+import java.util.List;
 
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.ParallelRange;
 
 /**
  *
@@ -64,6 +64,15 @@ import org.knime.core.node.ExecutionMonitor;
  */
 public class ActiveSearchOnGraphs {
 
+    /** number of non-zeros of the matrix per task of a sweep */
+    private static final int PART_NON_ZEROS = 4096;
+
+    /** work budget of an incremental update, in multiples of the work of one sweep */
+    private static final int MAX_PUSH_SWEEPS = 4;
+
+    /** number of pushes between two checks for cancellation */
+    private static final int PUSH_CHECK_INTERVAL = 1 << 16;
+
     private final double priorWeight;
 
     private final int numPoints;
@@ -74,16 +83,46 @@ public class ActiveSearchOnGraphs {
 
     private final ActiveSearchOnGraphsPoint[] points;
 
-    private final double[][] distanceMatrix;
+    /** row normalized relation weights of the neighbors of each point */
+    private final CSRMatrix distanceMatrix;
+
+    /** fingerprint of the normalized relation weights */
+    private final long fingerprint;
+
+    private double tolerance = 1e-6;
+
+    private int maxIterations = 500;
+
+    private int iterations;
+
+    private double residual = Double.NaN;
+
+    /** coefficients of the last propagation: factor of the relation weights and constant term of each row */
+    private double[] factors;
+
+    private double[] offsets;
+
+    /** A, the relation weights scaled by the factors */
+    private double[] A;
+
+    /** row offsets of the parts of a sweep */
+    private int[] parts;
+
+    private double[] estimates;
 
-    private final ExecutorService executorService = ActiveSearchOnGraphsNodeModel.EXECUTIONSERVICE;
+    /** results of the running sweep, swapped with the estimates after each sweep */
+    private double[] buffer;
+
+    /** residual of each row after the last propagation, null if not known */
+    private double[] residuals;
 
     /**
-     * @param _numIterations
-     * @param _minActivation
+     * @param _priorWeight
+     * @param _points
+     * @param _distanceMatrix relation weights of the neighbors of each point, normalized in place
      */
     public ActiveSearchOnGraphs(final double _priorWeight, final ActiveSearchOnGraphsPoint[] _points,
-                                final double[][] _distanceMatrix) {
+                                final CSRMatrix _distanceMatrix) {
         this.priorWeight = _priorWeight;
         this.numPoints = _points.length;
 
@@ -96,42 +135,195 @@ public class ActiveSearchOnGraphs {
         // Matrix A
 
         // normalization factor
+        final int[] rowPointers = _distanceMatrix.rowPointers();
+        final double[] values = _distanceMatrix.values();
         for (int i = 0; i < numPoints; i++) {
             double normConstant = 0;
-            for (int j = 0; j < numPoints; j++) {
-                normConstant += _distanceMatrix[i][j];
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                normConstant += values[k];
+            }
+            if (normConstant == 0) {
+                // no weighted neighbors
+                continue;
             }
-            for (int j = 0; j < numPoints; j++) {
-                _distanceMatrix[i][j] /= normConstant;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                values[k] /= normConstant;
             }
         }
 
+        this.fingerprint = ActiveSearchState.fingerprint(_distanceMatrix);
+    }
+
+    /**
+     * @param _tolerance the propagation stops once no estimate changes by more than this in a sweep
+     * @param _maxIterations the propagation stops after this many sweeps even if it did not converge
+     */
+    public void setConvergence(final double _tolerance, final int _maxIterations) {
+        tolerance = _tolerance;
+        maxIterations = _maxIterations;
+    }
+
+    /**
+     * @return number of sweeps of the last propagation, zero if it was updated incrementally by pushes only
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return largest change of an estimate in the last sweep of the last propagation, above the tolerance if the
+     *         propagation did not converge
+     */
+    public double residual() {
+        return residual;
+    }
+
+    /**
+     * Computes the estimates from scratch.
+     *
+     * @param parallel engine to run the sweeps on
+     * @param monitor
+     * @throws CanceledExecutionException
+     */
+    public void propagate(final ParallelRange parallel, final ExecutionMonitor monitor)
+            throws CanceledExecutionException {
+        propagate(null, parallel, monitor);
     }
 
     /**
+     * Computes the estimates, incrementally from the state of a previous propagation if it belongs to the same graph.
+     * Only the residual of the rows whose label or prior changed is then pushed through the graph, which costs work
+     * in the size of the change instead of the size of the graph. If the push exceeds its work budget, the sweeps
+     * take over from the estimates reached so far.
      *
+     * @param previous state of a previous propagation, see {@link #state(ParallelRange)}, or <code>null</code>
+     * @param parallel engine to run the sweeps on
+     * @param monitor
+     * @return <code>true</code> if the estimates were updated incrementally by pushes only
+     * @throws CanceledExecutionException
+     */
+    public boolean propagate(final ActiveSearchState previous, final ParallelRange parallel,
+                             final ExecutionMonitor monitor) throws CanceledExecutionException {
+        final boolean pushed = prepare(previous, monitor);
+        if (!pushed) {
+            buffer = new double[numPoints];
+            while (!converged()) {
+                // multiply, each part of the rows is one task
+                residual =
+                        parallel.reduce(parts.length - 1, 1, ParallelRange.Reducer.MAX,
+                                        new ParallelRange.Reduction() {
+                                            @Override
+                                            public double apply(final int from, final int to) {
+                                                return sweep(from, to);
+                                            }
+                                        });
+                swap();
+
+                monitor.checkCanceled();
+            }
+        }
+        finish();
+        return pushed;
+    }
+
+    /**
+     * Computes the estimates in several universes together. All universes share the rows, hence their matrices form
+     * one block-diagonal matrix whose sweeps run as one parallel loop over the parts of all universes. A universe
+     * leaves the loop once it has converged.
      *
-     * @param unlabaled
-     * @param labeled
+     * @param algos the propagation of each universe
+     * @param previous state of a previous propagation of each universe, the entries may be <code>null</code>
+     * @param parallel engine to run the sweeps on
      * @param monitor
-     * @param distanceMatrix
      * @throws CanceledExecutionException
      */
-    public void propagate(final ExecutionMonitor monitor) throws CanceledExecutionException {
+    public static void propagate(final ActiveSearchOnGraphs[] algos, final ActiveSearchState[] previous,
+                                 final ParallelRange parallel, final ExecutionMonitor monitor)
+            throws CanceledExecutionException {
+        final List<ActiveSearchOnGraphs> active = new ArrayList<ActiveSearchOnGraphs>();
+        for (int u = 0; u < algos.length; u++) {
+            if (!algos[u].prepare(previous[u], monitor)) {
+                algos[u].buffer = new double[algos[u].numPoints];
+                if (!algos[u].converged()) {
+                    active.add(algos[u]);
+                }
+            }
+        }
+
+        while (!active.isEmpty()) {
+            // the parts of all active universes one after another
+            int numTasks = 0;
+            for (final ActiveSearchOnGraphs algo : active) {
+                numTasks += algo.parts.length - 1;
+            }
+            final ActiveSearchOnGraphs[] taskAlgos = new ActiveSearchOnGraphs[numTasks];
+            final int[] taskParts = new int[numTasks];
+            int t = 0;
+            for (final ActiveSearchOnGraphs algo : active) {
+                for (int part = 0; part < algo.parts.length - 1; part++) {
+                    taskAlgos[t] = algo;
+                    taskParts[t++] = part;
+                }
+            }
+
+            // sweep until a universe converges
+            final double[] changes = new double[numTasks];
+            boolean anyConverged = false;
+            while (!anyConverged) {
+                parallel.forEach(numTasks, 1, new ParallelRange.Body() {
+                    @Override
+                    public void apply(final int from, final int to) {
+                        for (int task = from; task < to; task++) {
+                            changes[task] = taskAlgos[task].sweep(taskParts[task], taskParts[task] + 1);
+                        }
+                    }
+                });
+
+                t = 0;
+                for (final ActiveSearchOnGraphs algo : active) {
+                    algo.residual = 0;
+                    for (int part = 0; part < algo.parts.length - 1; part++) {
+                        algo.residual = Math.max(algo.residual, changes[t++]);
+                    }
+                    algo.swap();
+                    anyConverged |= algo.converged();
+                }
+
+                monitor.checkCanceled();
+            }
+
+            for (final Iterator<ActiveSearchOnGraphs> it = active.iterator(); it.hasNext();) {
+                if (it.next().converged()) {
+                    it.remove();
+                }
+            }
+        }
+
+        for (final ActiveSearchOnGraphs algo : algos) {
+            algo.finish();
+        }
+    }
+
+    /*
+     * Sets up the coefficients of the propagation and its start. Returns true if the estimates are already final
+     * after an incremental update by pushes.
+     */
+    private boolean prepare(final ActiveSearchState previous, final ExecutionMonitor monitor)
+            throws CanceledExecutionException {
 
         //        final double certaintySmoothing = 0.0005;
         //        final double certaintySmoothingA = 1.0 / (1.0 + certaintySmoothing);
         //        final double certaintySmoothingDPrime = certaintySmoothing / (1.0 + certaintySmoothing);
 
-        // A
-        final double[][] A = new double[numPoints][numPoints];
+        // A, same sparsity as the distance matrix
+        final int[] rowPointers = distanceMatrix.rowPointers();
+        final double[] distances = distanceMatrix.values();
+        factors = new double[numPoints];
+        A = new double[distanceMatrix.nnz()];
         for (int i = 0; i < numPoints; i++) {
-            final boolean isLabeled = points[i].isLabeled();
-
-            for (int j = 0; j < numPoints; j++) {
-                A[i][j] =
-                        isLabeled ? (1 - points[i].getEta()) * distanceMatrix[i][j] : priorAFactor
-                                * distanceMatrix[i][j];
+            factors[i] = points[i].isLabeled() ? 1 - points[i].getEta() : priorAFactor;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                A[k] = factors[i] * distances[k];
             }
         }
 
@@ -169,70 +361,182 @@ public class ActiveSearchOnGraphs {
         //            pseudoResCertainty[i] = points[i].isLabeled() ? 1 : 0;
         //        }
 
-        double[] res = new double[numPoints];
-        //        double[] resCertainty = new double[numPoints];
-
-        // now the iterative multiplication
-        int t = 0;
-        boolean converged = false;
-        while (!converged) {
+        // sum up all pseudo label nodes
+        offsets = new double[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            offsets[i] = pseudoRes[i] * D_PRIME[i];
+        }
 
-            final double[] newRes = new double[numPoints];
-            //            final double[] newResCertainty = new double[numPoints];
+        // rows split into parts of about the same number of non-zeros
+        parts = distanceMatrix.partitionRows(Math.min(ParallelRange.MAX_CHUNKS, 1 + distanceMatrix.nnz()
+                / PART_NON_ZEROS));
 
-            //            final double[] finalResCertainty = resCertainty;
-            final double[] finalRes = res;
+        iterations = 0;
+        residual = Double.POSITIVE_INFINITY;
+        residuals = null;
+        if (previous != null && previous.matches(fingerprint, numPoints)) {
+            estimates = previous.estimates().clone();
+            return push(previous, monitor);
+        }
+        estimates = new double[numPoints];
+        return false;
+    }
 
-            // multiply
-            final ArrayList<Future<Void>> futures = new ArrayList<>();
-            for (int i = 0; i < numPoints; i++) {
+    private void finish() {
+        buffer = null;
+        for (int i = 0; i < numPoints; i++) {
+            points[i].setActivityEstimate(estimates[i]);
+            points[i].setCertainty(0);
+        }
+    }
 
-                final int finalI = i;
-                final Callable<Void> callable = new Callable<Void>() {
+    /*
+     * The propagation stops once the largest change of a result is within the tolerance.
+     */
+    private boolean converged() {
+        return residual <= tolerance || iterations >= maxIterations;
+    }
 
-                    @Override
-                    public Void call() throws Exception {
+    /*
+     * One Jacobi sweep over the rows of the parts [fromPart, toPart), from the estimates into the buffer. Returns the
+     * largest change of a row.
+     */
+    private double sweep(final int fromPart, final int toPart) {
+        final int[] rowPointers = distanceMatrix.rowPointers();
+        final int[] columnIndices = distanceMatrix.columnIndices();
+        final double[] res = estimates;
+        final double[] newRes = buffer;
+
+        double maxChange = 0;
+        for (int i = parts[fromPart]; i < parts[toPart]; i++) {
+            double sum = 0;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                sum += res[columnIndices[k]] * A[k];
+                //                newResCertainty[i] += resCertainty[j] * A_CERTAINTY[i][j];
+            }
 
-                        for (final int j : points[finalI].neighborIndices()) {
-                            newRes[finalI] += finalRes[j] * A[finalI][j];
-                            //                            newResCertainty[finalI] += finalResCertainty[j] * A_CERTAINTY[finalI][j];
-                        }
+            newRes[i] = sum + offsets[i];
 
-                        // some up all pseudo label nodes
-                        newRes[finalI] += pseudoRes[finalI] * D_PRIME[finalI];
+            // set certainty
+            //            newResCertainty[i] += pseudoResCertainty[i] * D_PRIME_CERTAINTY[i];
 
-                        // set certainty
-                        //                        newResCertainty[finalI] += pseudoResCertainty[finalI] * D_PRIME_CERTAINTY[finalI];
+            maxChange = Math.max(maxChange, Math.abs(newRes[i] - res[i]));
+        }
+        return maxChange;
+    }
 
-                        return null;
-                    }
-                };
+    /*
+     * Makes the results of the last sweep the estimates.
+     */
+    private void swap() {
+        final double[] res = estimates;
+        estimates = buffer;
+        buffer = res;
+        iterations++;
+    }
 
-                futures.add(executorService.submit(callable));
+    /*
+     * Local push from the estimates and residuals of the previous state (similar to approximate personalized
+     * PageRank): a row with a residual above the tolerance takes it into its estimate and passes it on, weighted, to
+     * the rows it is a neighbor of. Returns false if the work budget is exceeded.
+     */
+    private boolean push(final ActiveSearchState previous, final ExecutionMonitor monitor)
+            throws CanceledExecutionException {
+        final int[] rowPointers = distanceMatrix.rowPointers();
+        final int[] columnIndices = distanceMatrix.columnIndices();
+        final double[] x = estimates;
+        final double[] r = previous.residuals().clone();
+
+        // rows queued for a push, each row is queued at most once at a time
+        final int[] queue = new int[Math.max(1, numPoints)];
+        final boolean[] queued = new boolean[numPoints];
+        int head = 0;
+        int size = 0;
+
+        // only the residuals of the rows whose coefficients changed are affected
+        for (int i = 0; i < numPoints; i++) {
+            if (factors[i] != previous.factors()[i] || offsets[i] != previous.offsets()[i]) {
+                double sum = offsets[i] - x[i];
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    sum += A[k] * x[columnIndices[k]];
+                }
+                r[i] = sum;
             }
+            if (Math.abs(r[i]) > tolerance) {
+                queue[size++] = i;
+                queued[i] = true;
+            }
+        }
 
-            for (final Future<Void> future : futures) {
-                try {
-                    future.get();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                } catch (ExecutionException e) {
-                    e.printStackTrace();
+        // the rows having row i as neighbor
+        final CSRMatrix dependents = distanceMatrix.transpose();
+        final int[] dependentPointers = dependents.rowPointers();
+        final int[] dependentRows = dependents.columnIndices();
+        final double[] dependentWeights = dependents.values();
+
+        final long budget = MAX_PUSH_SWEEPS * ((long)distanceMatrix.nnz() + numPoints);
+        long work = 0;
+        long pushes = 0;
+        while (size > 0) {
+            final int i = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued[i] = false;
+
+            final double delta = r[i];
+            x[i] += delta;
+            r[i] = 0;
+            for (int k = dependentPointers[i]; k < dependentPointers[i + 1]; k++) {
+                final int j = dependentRows[k];
+                r[j] += factors[j] * dependentWeights[k] * delta;
+                if (!queued[j] && Math.abs(r[j]) > tolerance) {
+                    queue[(head + size++) % queue.length] = j;
+                    queued[j] = true;
                 }
             }
 
-            res = newRes;
-            //            resCertainty = newResCertainty;
-            if (++t > 500) {
-                break;
+            work += 1 + dependentPointers[i + 1] - dependentPointers[i];
+            if (work > budget) {
+                return false;
+            }
+            if (++pushes % PUSH_CHECK_INTERVAL == 0) {
+                monitor.checkCanceled();
             }
-
-            monitor.checkCanceled();
         }
 
+        residual = 0;
         for (int i = 0; i < numPoints; i++) {
-            points[i].setActivityEstimate(res[i]);
-            points[i].setCertainty(0);
+            residual = Math.max(residual, Math.abs(r[i]));
+        }
+        residuals = r;
+        return true;
+    }
+
+    /**
+     * @param parallel engine to run on
+     * @return the state of the last propagation, from which the next one can continue
+     */
+    public ActiveSearchState state(final ParallelRange parallel) {
+        if (residuals == null) {
+            // one more multiplication, without updating the estimates
+            final int[] rowPointers = distanceMatrix.rowPointers();
+            final int[] columnIndices = distanceMatrix.columnIndices();
+            final double[] x = estimates;
+            final double[] r = new double[numPoints];
+            parallel.forEach(parts.length - 1, 1, new ParallelRange.Body() {
+                @Override
+                public void apply(final int from, final int to) {
+                    for (int i = parts[from]; i < parts[to]; i++) {
+                        double sum = offsets[i] - x[i];
+                        for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                            sum += A[k] * x[columnIndices[k]];
+                        }
+                        r[i] = sum;
+                    }
+                }
+            });
+            residuals = r;
         }
+        return new ActiveSearchState(fingerprint, factors, offsets, estimates, residuals);
     }
 }
@@ -6,8 +6,12 @@ import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.semisupervised.util.Labels;
+import org.knime.semisupervised.util.ParallelRange;
 
 /**
  *
@@ -70,6 +74,42 @@ public class ActiveSearchOnGraphsNodeFactory extends NodeFactory<ActiveSearchOnG
                 addDialogComponent(new DialogComponentNumber(ActiveSearchOnGraphsNodeModel.createPriorWeightModel(),
                         "Prior Weight", 0.95));
 
+                addDialogComponent(new DialogComponentNumber(ActiveSearchOnGraphsNodeModel.createToleranceModel(),
+                        "Convergence Tolerance", 1e-6));
+
+                addDialogComponent(new DialogComponentNumber(
+                        ActiveSearchOnGraphsNodeModel.createMaxIterationsModel(), "Maximum Iterations", 10));
+
+                addDialogComponent(new DialogComponentBoolean(ActiveSearchOnGraphsNodeModel.createIncrementalModel(),
+                        "Incremental Update"));
+
+                addDialogComponent(new DialogComponentBoolean(ActiveSearchOnGraphsNodeModel.createFusedModel(),
+                        "Propagate Universes Together"));
+
+                addDialogComponent(new DialogComponentStringSelection(
+                        ActiveSearchOnGraphsNodeModel.createBackendModel(), "Threads",
+                        Labels.labels(ParallelRange.Backend.class)));
+
+                addDialogComponent(new DialogComponentNumber(ActiveSearchOnGraphsNodeModel.createParallelismModel(),
+                        "Number of Threads (0 = KNIME default)", 1));
+
+                addDialogComponent(new DialogComponentNumber(
+                        ActiveSearchOnGraphsNodeModel.createLookaheadDepthModel(), "Lookahead Depth", 1));
+
+                addDialogComponent(new DialogComponentNumber(
+                        ActiveSearchOnGraphsNodeModel.createLookaheadWeightModel(), "Lookahead Weight of Estimate",
+                        0.05));
+
+                addDialogComponent(new DialogComponentNumber(ActiveSearchOnGraphsNodeModel.createBatchSizeModel(),
+                        "Batch Size", 1));
+
+                addDialogComponent(new DialogComponentStringSelection(
+                        ActiveSearchOnGraphsNodeModel.createBatchSelectionModel(), "Batch Selection",
+                        Labels.labels(BatchSelector.Strategy.class)));
+
+                addDialogComponent(new DialogComponentNumber(ActiveSearchOnGraphsNodeModel.createDiversityHopsModel(),
+                        "Diversity Radius (hops, 0 = off)", 1));
+
             }
         };
     }
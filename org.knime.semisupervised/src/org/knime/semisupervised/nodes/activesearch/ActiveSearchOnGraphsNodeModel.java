@@ -3,14 +3,14 @@ package org.knime.semisupervised.nodes.activesearch;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import org.knime.core.data.DataCell;
@@ -24,6 +24,8 @@ import org.knime.core.data.RowKey;
 import org.knime.core.data.collection.CollectionDataValue;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
@@ -33,18 +35,48 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.util.Pair;
-import org.knime.core.util.ThreadPool;
 import org.knime.paruni.NodeTools;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.Labels;
+import org.knime.semisupervised.util.OptionalSettings;
+import org.knime.semisupervised.util.ParallelRange;
 
 /**
  * @author dietzc, University of Konstanz
  */
 public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
-    public static ExecutorService EXECUTIONSERVICE = Executors.newFixedThreadPool(100);
+    // keys of settings added later, older workflows lack them
+
+    private static final String CFG_TOLERANCE = "tolerance";
+
+    private static final String CFG_MAX_ITERATIONS = "max_iterations";
+
+    private static final String CFG_INCREMENTAL_UPDATE = "incremental_update";
+
+    private static final String CFG_FUSED_UNIVERSES = "fused_universes";
+
+    private static final String CFG_PARALLEL_BACKEND = "parallel_backend";
+
+    private static final String CFG_PARALLELISM = "parallelism";
+
+    private static final String CFG_LOOKAHEAD_DEPTH = "lookahead_depth";
+
+    private static final String CFG_LOOKAHEAD_WEIGHT = "lookahead_weight";
+
+    private static final String CFG_BATCH_SIZE = "batch_size";
+
+    private static final String CFG_BATCH_SELECTION = "batch_selection";
+
+    private static final String CFG_DIVERSITY_HOPS = "diversity_hops";
+
+    private static final String STATE_FILE = "active_search_state.bin.gz";
 
     private SettingsModelString m_classColModel = createClassColModel();
 
@@ -60,6 +92,28 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
     private SettingsModelDouble m_priorWeightModel = createPriorWeightModel();
 
+    private SettingsModelDoubleBounded m_toleranceModel = createToleranceModel();
+
+    private SettingsModelIntegerBounded m_maxIterationsModel = createMaxIterationsModel();
+
+    private SettingsModelBoolean m_incrementalModel = createIncrementalModel();
+
+    private SettingsModelBoolean m_fusedModel = createFusedModel();
+
+    private SettingsModelString m_backendModel = createBackendModel();
+
+    private SettingsModelIntegerBounded m_parallelismModel = createParallelismModel();
+
+    private SettingsModelIntegerBounded m_lookaheadDepthModel = createLookaheadDepthModel();
+
+    private SettingsModelDoubleBounded m_lookaheadWeightModel = createLookaheadWeightModel();
+
+    private SettingsModelIntegerBounded m_batchSizeModel = createBatchSizeModel();
+
+    private SettingsModelString m_batchSelectionModel = createBatchSelectionModel();
+
+    private SettingsModelIntegerBounded m_diversityHopsModel = createDiversityHopsModel();
+
     //    private int m_nnRelationWeightsIdx;
 
     //    int m_nnIndicesIdx;
@@ -68,6 +122,9 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
     private ArrayList<String> m_universes;
 
+    /** state of the last propagation in each universe, kept for incremental updates */
+    private Map<String, ActiveSearchState> m_states;
+
     static SettingsModelString createClassColModel() {
         return new SettingsModelString("class_col_idx", "");
     }
@@ -96,6 +153,52 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
         return new SettingsModelDouble("priorWeight", 1.0);
     }
 
+    static SettingsModelDoubleBounded createToleranceModel() {
+        return new SettingsModelDoubleBounded(CFG_TOLERANCE, 1e-6, 0, Double.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createMaxIterationsModel() {
+        return new SettingsModelIntegerBounded(CFG_MAX_ITERATIONS, 500, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelBoolean createIncrementalModel() {
+        return new SettingsModelBoolean(CFG_INCREMENTAL_UPDATE, false);
+    }
+
+    static SettingsModelBoolean createFusedModel() {
+        return new SettingsModelBoolean(CFG_FUSED_UNIVERSES, true);
+    }
+
+    static SettingsModelString createBackendModel() {
+        return new SettingsModelString(CFG_PARALLEL_BACKEND, ParallelRange.Backend.FORK_JOIN.label());
+    }
+
+    /** number of threads, 0 for as many as KNIME is configured to use */
+    static SettingsModelIntegerBounded createParallelismModel() {
+        return new SettingsModelIntegerBounded(CFG_PARALLELISM, 0, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelIntegerBounded createLookaheadDepthModel() {
+        return new SettingsModelIntegerBounded(CFG_LOOKAHEAD_DEPTH, 1, 0, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelDoubleBounded createLookaheadWeightModel() {
+        return new SettingsModelDoubleBounded(CFG_LOOKAHEAD_WEIGHT, 0.5, 0, 1);
+    }
+
+    static SettingsModelIntegerBounded createBatchSizeModel() {
+        return new SettingsModelIntegerBounded(CFG_BATCH_SIZE, 96, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelString createBatchSelectionModel() {
+        return new SettingsModelString(CFG_BATCH_SELECTION, BatchSelector.Strategy.ACROSS.label());
+    }
+
+    /** rows within this many hops of a selected row are skipped, 0 for no diversity */
+    static SettingsModelIntegerBounded createDiversityHopsModel() {
+        return new SettingsModelIntegerBounded(CFG_DIVERSITY_HOPS, 0, 0, Integer.MAX_VALUE);
+    }
+
     /**
      * InPort 1 = All unlabeled
      *
@@ -103,10 +206,10 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
      *
      * OutPort 1 = Scored
      *
-     * OutPort 2 = Induced DontKnows
+     * OutPort 2 = Selected batch
      */
     public ActiveSearchOnGraphsNodeModel() {
-        super(1, 1);
+        super(1, 2);
     }
 
     /**
@@ -147,7 +250,7 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
         m_universes = new ArrayList<String>(universeIdxMap.keySet());
 
-        return new DataTableSpec[]{createResSpec()};
+        return new DataTableSpec[]{createResSpec(), createBatchSpec()};
     }
 
     /**
@@ -156,7 +259,7 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
      * @return
      */
     private DataTableSpec createResSpec() {
-        DataColumnSpec[] dataColumnSpecs = new DataColumnSpec[(2 * m_universes.size()) + 2];
+        DataColumnSpec[] dataColumnSpecs = new DataColumnSpec[(3 * m_universes.size()) + 3];
 
         int i = 0;
         for (final String universe : m_universes) {
@@ -171,9 +274,23 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
                 new DataColumnSpecCreator("Estimate [Max]", DoubleCell.TYPE).createSpec();
         dataColumnSpecs[(2 * m_universes.size()) + 1] =
                 new DataColumnSpecCreator("Certainty [Max]", DoubleCell.TYPE).createSpec();
+
+        // lookahead scores
+        i = (2 * m_universes.size()) + 2;
+        for (final String universe : m_universes) {
+            dataColumnSpecs[i++] = new DataColumnSpecCreator("Score [" + universe + "]", DoubleCell.TYPE).createSpec();
+        }
+        dataColumnSpecs[i] = new DataColumnSpecCreator("Score [Max]", DoubleCell.TYPE).createSpec();
         return new DataTableSpec(dataColumnSpecs);
     }
 
+    private DataTableSpec createBatchSpec() {
+        // the ranking is the universe the row was selected in, or Max for the ranking across universes
+        return new DataTableSpec(new DataColumnSpecCreator("Rank", IntCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Ranking", StringCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Score", DoubleCell.TYPE).createSpec());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -220,14 +337,14 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
             }
         }
 
-        final HashMap<String, Pair<ActiveSearchOnGraphsPoint[], double[][]>> pointsMap = new HashMap<>();
+        final HashMap<String, Pair<ActiveSearchOnGraphsPoint[], CSRMatrix>> pointsMap = new HashMap<>();
         final HashMap<RowKey, List<ActiveSearchOnGraphsPoint>> globalPointMap = new HashMap<>();
 
         for (final String universe : m_universes) {
             final int idxA = universeIdxMap.get(universe).get(0);
             final int idxB = universeIdxMap.get(universe).get(1);
 
-            final Pair<ActiveSearchOnGraphsPoint[], double[][]> pointsInUniverse;
+            final Pair<ActiveSearchOnGraphsPoint[], CSRMatrix> pointsInUniverse;
             if (inData[0].getDataTableSpec().getColumnSpec(idxA).getType().getCollectionElementType()
                     .isCompatible(IntValue.class)) {
                 pointsInUniverse = extractPoints(inData[0], idxB, idxA, globalPointMap);
@@ -240,46 +357,145 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
         final ActiveSearchOnGraphs[] algo = new ActiveSearchOnGraphs[m_universes.size()];
 
-        int a = 0;
-        for (final Entry<String, Pair<ActiveSearchOnGraphsPoint[], double[][]>> entry : pointsMap.entrySet()) {
-            algo[a++] =
-                    new ActiveSearchOnGraphs(m_priorWeightModel.getDoubleValue(), entry.getValue().getFirst(), entry
-                            .getValue().getSecond());
+        int a;
+        for (a = 0; a < m_universes.size(); a++) {
+            final Pair<ActiveSearchOnGraphsPoint[], CSRMatrix> pointsInUniverse = pointsMap.get(m_universes.get(a));
+            algo[a] =
+                    new ActiveSearchOnGraphs(m_priorWeightModel.getDoubleValue(), pointsInUniverse.getFirst(),
+                            pointsInUniverse.getSecond());
+            algo[a].setConvergence(m_toleranceModel.getDoubleValue(), m_maxIterationsModel.getIntValue());
         }
 
         final List<Future<Void>> futures = new ArrayList<>();
 
         // store all points in unlabeled
 
-        for (a = 0; a < m_universes.size(); a++) {
-            final int proxy = a;
-            final Callable<Void> callable = new Callable<Void>() {
+        // the sweeps of all universes share the threads of one pool
+        final Map<String, ActiveSearchState> previous = m_incrementalModel.getBooleanValue() ? m_states : null;
+        final double[][] scores = new double[m_universes.size()][];
+        final ParallelRange parallel =
+                new ParallelRange(Labels.fromLabel(ParallelRange.Backend.class, m_backendModel.getStringValue()),
+                        m_parallelismModel.getIntValue());
+        try {
+            if (m_fusedModel.getBooleanValue()) {
+                // one sweep over the block-diagonal matrix of all universes per iteration
+                final ActiveSearchState[] previousStates = new ActiveSearchState[m_universes.size()];
+                for (a = 0; a < m_universes.size(); a++) {
+                    previousStates[a] = previous == null ? null : previous.get(m_universes.get(a));
+                }
+                ActiveSearchOnGraphs.propagate(algo, previousStates, parallel, exec);
+            } else {
+                for (a = 0; a < m_universes.size(); a++) {
+                    final int proxy = a;
+                    final Callable<Void> callable = new Callable<Void>() {
+
+                        @Override
+                        public Void call() throws Exception {
+                            algo[proxy].propagate(previous == null ? null : previous.get(m_universes.get(proxy)),
+                                                  parallel, exec);
+                            return null;
+                        }
+                    };
+
+                    futures.add(parallel.submit(callable));
+                }
+
+                try {
+                    for (final Future<Void> future : futures) {
+                        future.get();
+                    }
+                } catch (final ExecutionException e) {
+                    // report a cancel as such and not as a failure of the task
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof CanceledExecutionException) {
+                        throw (CanceledExecutionException)cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw e;
+                } finally {
+                    // stops the universes which did not start yet if one of them failed, a no-op otherwise
+                    for (final Future<Void> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
 
-                @Override
-                public Void call() throws Exception {
-                    algo[proxy].propagate(exec);
-                    return null;
+            if (m_incrementalModel.getBooleanValue()) {
+                m_states = new LinkedHashMap<String, ActiveSearchState>();
+                for (a = 0; a < m_universes.size(); a++) {
+                    m_states.put(m_universes.get(a), algo[a].state(parallel));
                 }
-            };
+            } else {
+                m_states = null;
+            }
 
-            futures.add(ThreadPool.currentPool().submit(callable));
+            // lookahead score of each point: its estimate mixed with the scores of its neighbors
+            for (a = 0; a < m_universes.size(); a++) {
+                final ActiveSearchOnGraphsPoint[] points = pointsMap.get(m_universes.get(a)).getFirst();
+                final double[] estimates = new double[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    estimates[i] = points[i].getEstimate();
+                }
+                scores[a] =
+                        new NeighborhoodScorer(pointsMap.get(m_universes.get(a)).getSecond(),
+                                m_lookaheadDepthModel.getIntValue()).score(estimates,
+                                                                           m_lookaheadWeightModel.getDoubleValue(),
+                                                                           parallel);
+            }
+        } finally {
+            parallel.shutdown();
         }
 
-        for (final Future<Void> future : futures) {
-            future.get();
+        // load of the threads of this execution, e.g. to spot several active search nodes starving each other
+        final ParallelRange.Statistics stats = parallel.statistics();
+        pushFlowVariableInt("as_tasks", (int)Math.min(Integer.MAX_VALUE, stats.tasks()));
+        pushFlowVariableDouble("as_task_latency_ms", stats.taskNanos() / 1e6 / Math.max(1, stats.tasks()));
+        pushFlowVariableDouble("as_task_wait_ms", stats.waitNanos() / 1e6 / Math.max(1, stats.tasks()));
+        pushFlowVariableInt("as_busy_threads", stats.maxBusyThreads());
+        pushFlowVariableInt("as_queue_depth", stats.maxQueueDepth());
+
+        // convergence of the propagation in each universe
+        for (a = 0; a < m_universes.size(); a++) {
+            pushFlowVariableInt("as_iterations_" + m_universes.get(a), algo[a].iterations());
+            pushFlowVariableDouble("as_residual_" + m_universes.get(a), algo[a].residual());
         }
 
         final BufferedDataContainer containerP0 = exec.createDataContainer(createResSpec());
 
+        // the best unlabeled rows are collected while the rows are written
+        final int numRows = inData[0].getRowCount();
+        final BatchSelector selector =
+                new BatchSelector(m_universes.size(), m_batchSizeModel.getIntValue(),
+                        m_diversityHopsModel.getIntValue() > 0, numRows);
+
         for (final List<ActiveSearchOnGraphsPoint> points : globalPointMap.values()) {
             double max = 0;
             double maxCertainty = 0;
-            final DoubleCell[] cells = new DoubleCell[(2 * points.size()) + 2];
-            for (int i = 0; i < points.size() * 2; i += 2) {
-                max = Math.max(points.get(i).getEstimate(), max);
-                maxCertainty = Math.max(points.get(i).getCertainty(), maxCertainty);
-                cells[i] = new DoubleCell(points.get(i).getEstimate());
-                cells[i + 1] = new DoubleCell(points.get(i).getCertainty());
+            double maxScore = 0;
+            final DataCell[] cells = new DataCell[(3 * points.size()) + 3];
+            // the points of a row are in the order of the universes
+            for (int u = 0; u < points.size(); u++) {
+                max = Math.max(points.get(u).getEstimate(), max);
+                maxCertainty = Math.max(points.get(u).getCertainty(), maxCertainty);
+                cells[2 * u] = new DoubleCell(points.get(u).getEstimate());
+                cells[(2 * u) + 1] = new DoubleCell(points.get(u).getCertainty());
+                final double score = scores[u][points.get(u).getIdx()];
+                maxScore = Math.max(score, maxScore);
+                cells[(2 * points.size()) + 2 + u] = new DoubleCell(score);
+            }
+            cells[(3 * points.size()) + 2] = new DoubleCell(maxScore);
+
+            if (!points.get(0).isLabeled()) {
+                final int idx = points.get(0).getIdx();
+                for (int u = 0; u < points.size(); u++) {
+                    selector.offer(u, idx, scores[u][idx]);
+                }
+                selector.offerAcross(idx, maxScore);
             }
 
             cells[(2 * points.size())] = new DoubleCell(max);
@@ -290,10 +506,35 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
         containerP0.close();
 
-        return new BufferedDataTable[]{containerP0.getTable()};
+        NeighborhoodScorer[] neighborhoods = null;
+        if (m_diversityHopsModel.getIntValue() > 0) {
+            neighborhoods = new NeighborhoodScorer[m_universes.size()];
+            for (a = 0; a < m_universes.size(); a++) {
+                neighborhoods[a] =
+                        new NeighborhoodScorer(pointsMap.get(m_universes.get(a)).getSecond(),
+                                m_diversityHopsModel.getIntValue());
+            }
+        }
+
+        final BufferedDataContainer containerP1 = exec.createDataContainer(createBatchSpec());
+        // without universes there are no estimates and hence nothing to select
+        if (!m_universes.isEmpty()) {
+            final ActiveSearchOnGraphsPoint[] rows = pointsMap.get(m_universes.get(0)).getFirst();
+            final BatchSelector.Strategy strategy =
+                    Labels.fromLabel(BatchSelector.Strategy.class, m_batchSelectionModel.getStringValue());
+            int rank = 0;
+            for (final BatchSelector.Pick pick : selector.select(strategy, neighborhoods, numRows)) {
+                containerP1.addRowToTable(new DefaultRow(rows[pick.row].getKey(), new IntCell(++rank),
+                        new StringCell(pick.universe < 0 ? "Max" : m_universes.get(pick.universe)), new DoubleCell(
+                                pick.score)));
+            }
+        }
+        containerP1.close();
+
+        return new BufferedDataTable[]{containerP0.getTable(), containerP1.getTable()};
     }
 
-    private Pair<ActiveSearchOnGraphsPoint[], double[][]>
+    private Pair<ActiveSearchOnGraphsPoint[], CSRMatrix>
             extractPoints(final BufferedDataTable table, final int universeRelationsIdx, final int universeIndicesIdx,
                           final Map<RowKey, List<ActiveSearchOnGraphsPoint>> globalPointMap)
                     throws CanceledExecutionException {
@@ -301,7 +542,8 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
         final int numPoints = table.getRowCount();
 
         final ActiveSearchOnGraphsPoint[] allPoints = new ActiveSearchOnGraphsPoint[numPoints];
-        final double[][] relationWeightMatrix = new double[numPoints][numPoints];
+        final int[][] neighborIndices = new int[numPoints][];
+        final double[][] relationWeights = new double[numPoints][];
 
         final Iterator<DataRow> it = table.iterator();
         while (it.hasNext()) {
@@ -328,24 +570,30 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
 
             globalList.add(point);
 
-            final Iterator<DataCell> relationWeights =
-                    ((CollectionDataValue)row.getCell(universeRelationsIdx)).iterator();
+            // only the k given neighbors of each row are stored
+            final CollectionDataValue weightCollection = (CollectionDataValue)row.getCell(universeRelationsIdx);
+            final Iterator<DataCell> weights = weightCollection.iterator();
             final Iterator<DataCell> indices = ((CollectionDataValue)row.getCell(universeIndicesIdx)).iterator();
-
-            while (relationWeights.hasNext()) {
+            final int[] rowIndices = new int[weightCollection.size()];
+            final double[] rowWeights = new double[weightCollection.size()];
+            int k = 0;
+            while (weights.hasNext()) {
                 final int idx = ((IntValue)indices.next()).getIntValue();
-                final double weight = ((DoubleValue)relationWeights.next()).getDoubleValue();
+                final double weight = ((DoubleValue)weights.next()).getDoubleValue();
 
                 if (idx == globalIdx) {
                     continue;
                 }
 
-                point.addNeighbor(idx);
-                relationWeightMatrix[globalIdx][idx] = weight;
+                rowIndices[k] = idx;
+                rowWeights[k++] = weight;
             }
+            neighborIndices[globalIdx] = Arrays.copyOf(rowIndices, k);
+            relationWeights[globalIdx] = Arrays.copyOf(rowWeights, k);
         }
 
-        return new Pair<ActiveSearchOnGraphsPoint[], double[][]>(allPoints, relationWeightMatrix);
+        return new Pair<ActiveSearchOnGraphsPoint[], CSRMatrix>(allPoints, CSRMatrix.fromRows(numPoints, numPoints,
+                neighborIndices, relationWeights));
     }
 
     /**
@@ -353,7 +601,7 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
      */
     @Override
     protected void reset() {
-        // Nothing to do since now
+        // the propagation states are kept on purpose, the next execution may continue from them
     }
 
     /**
@@ -362,7 +610,8 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
     @Override
     protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // Nothing to do here
+        final File stateFile = new File(nodeInternDir, STATE_FILE);
+        m_states = stateFile.exists() ? ActiveSearchState.load(stateFile) : null;
     }
 
     /**
@@ -371,7 +620,9 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
     @Override
     protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // Nothing to do here
+        if (m_states != null) {
+            ActiveSearchState.save(m_states, new File(nodeInternDir, STATE_FILE));
+        }
     }
 
     /**
@@ -383,6 +634,17 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
         m_etaNodeModel.saveSettingsTo(settings);
         m_priorColModel.saveSettingsTo(settings);
         m_priorWeightModel.saveSettingsTo(settings);
+        m_toleranceModel.saveSettingsTo(settings);
+        m_maxIterationsModel.saveSettingsTo(settings);
+        m_incrementalModel.saveSettingsTo(settings);
+        m_fusedModel.saveSettingsTo(settings);
+        m_backendModel.saveSettingsTo(settings);
+        m_parallelismModel.saveSettingsTo(settings);
+        m_lookaheadDepthModel.saveSettingsTo(settings);
+        m_lookaheadWeightModel.saveSettingsTo(settings);
+        m_batchSizeModel.saveSettingsTo(settings);
+        m_batchSelectionModel.saveSettingsTo(settings);
+        m_diversityHopsModel.saveSettingsTo(settings);
         m_idxColModel.saveSettingsTo(settings);
         //        m_nnRelationWeightsColModel.saveSettingsTo(settings);
         //        m_nnIndicesColModel.saveSettingsTo(settings);
@@ -397,6 +659,17 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
         m_etaNodeModel.validateSettings(settings);
         m_priorColModel.validateSettings(settings);
         m_priorWeightModel.validateSettings(settings);
+        OptionalSettings.validate(m_toleranceModel, CFG_TOLERANCE, settings);
+        OptionalSettings.validate(m_maxIterationsModel, CFG_MAX_ITERATIONS, settings);
+        OptionalSettings.validate(m_incrementalModel, CFG_INCREMENTAL_UPDATE, settings);
+        OptionalSettings.validate(m_fusedModel, CFG_FUSED_UNIVERSES, settings);
+        OptionalSettings.validate(m_backendModel, CFG_PARALLEL_BACKEND, settings);
+        OptionalSettings.validate(m_parallelismModel, CFG_PARALLELISM, settings);
+        OptionalSettings.validate(m_lookaheadDepthModel, CFG_LOOKAHEAD_DEPTH, settings);
+        OptionalSettings.validate(m_lookaheadWeightModel, CFG_LOOKAHEAD_WEIGHT, settings);
+        OptionalSettings.validate(m_batchSizeModel, CFG_BATCH_SIZE, settings);
+        OptionalSettings.validate(m_batchSelectionModel, CFG_BATCH_SELECTION, settings);
+        OptionalSettings.validate(m_diversityHopsModel, CFG_DIVERSITY_HOPS, settings);
         m_idxColModel.validateSettings(settings);
         //        m_nnRelationWeightsColModel.validateSettings(settings);
         //       m_nnIndicesColModel.validateSettings(settings);
@@ -411,6 +684,17 @@ public class ActiveSearchOnGraphsNodeModel extends NodeModel {
         m_etaNodeModel.loadSettingsFrom(settings);
         m_priorColModel.loadSettingsFrom(settings);
         m_priorWeightModel.loadSettingsFrom(settings);
+        OptionalSettings.load(m_toleranceModel, CFG_TOLERANCE, settings);
+        OptionalSettings.load(m_maxIterationsModel, CFG_MAX_ITERATIONS, settings);
+        OptionalSettings.load(m_incrementalModel, CFG_INCREMENTAL_UPDATE, settings);
+        OptionalSettings.load(m_fusedModel, CFG_FUSED_UNIVERSES, settings);
+        OptionalSettings.load(m_backendModel, CFG_PARALLEL_BACKEND, settings);
+        OptionalSettings.load(m_parallelismModel, CFG_PARALLELISM, settings);
+        OptionalSettings.load(m_lookaheadDepthModel, CFG_LOOKAHEAD_DEPTH, settings);
+        OptionalSettings.load(m_lookaheadWeightModel, CFG_LOOKAHEAD_WEIGHT, settings);
+        OptionalSettings.load(m_batchSizeModel, CFG_BATCH_SIZE, settings);
+        OptionalSettings.load(m_batchSelectionModel, CFG_BATCH_SELECTION, settings);
+        OptionalSettings.load(m_diversityHopsModel, CFG_DIVERSITY_HOPS, settings);
         m_idxColModel.loadSettingsFrom(settings);
         //      m_nnRelationWeightsColModel.loadSettingsFrom(settings);
         //        m_nnIndicesColModel.loadSettingsFrom(settings);
@@ -49,13 +49,9 @@
  */
 package org.knime.semisupervised.nodes.activesearch;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 import org.knime.core.data.RowKey;
 import org.knime.core.util.MutableDouble;
@@ -72,10 +68,6 @@ class ActiveSearchOnGraphsPoint {
 
     private double prior;
 
-    private List<Integer> neighbors = new ArrayList<>();
-
-    private Map<String, HashSet<ActiveSearchOnGraphsPoint>> neighborhoods = new HashMap<>();
-
     private Map<String, MutableDouble> relations = new HashMap<>();
 
     private final int idx;
@@ -122,40 +114,6 @@ class ActiveSearchOnGraphsPoint {
         return estimate;
     }
 
-    public List<Integer> neighborIndices() {
-        return neighbors;
-    }
-
-    public double rate(final int lvl, final ActiveSearchOnGraphsPoint[] allPoints, final double alpha) {
-
-        double total = 0;
-        for (final int i : neighbors) {
-            if (i == idx) {
-                continue;
-            }
-            if (lvl == 0) {
-                total += allPoints[i].getEstimate();
-            } else {
-                total += allPoints[i].rate(lvl - 1, allPoints, alpha);
-            }
-
-            if (Double.isNaN(total)) {
-                System.out.println("?");
-            }
-        }
-
-        total /= (neighbors.size() - 1);
-
-        return alpha * estimate + (1 - alpha) * (total);
-    }
-
-    /**
-     * @param idx
-     */
-    public void addNeighbor(final int idx) {
-        neighbors.add(idx);
-    }
-
     /**
      * @return
      */
@@ -170,30 +128,6 @@ class ActiveSearchOnGraphsPoint {
         this.prior = _prior;
     }
 
-    public Set<ActiveSearchOnGraphsPoint> resolveNeighborhood(final int lvl,
-                                                              final ActiveSearchOnGraphsPoint[] allPoints,
-                                                              final String universe) {
-
-        HashSet<ActiveSearchOnGraphsPoint> neighborhood = neighborhoods.get(universe + lvl);
-        if (neighborhood == null) {
-            neighborhood = new HashSet<>();
-            neighborhoods.put(universe + lvl, neighborhood);
-
-            for (final int i : neighbors) {
-                if (i == idx) {
-                    continue;
-                }
-                if (lvl > 0) {
-                    neighborhood.addAll(allPoints[idx].resolveNeighborhood(lvl - 1, allPoints, universe));
-                }
-
-                neighborhood.add(allPoints[idx]);
-            }
-        }
-
-        return neighborhood;
-    }
-
     /**
      * @param relation
      * @param string
@@ -0,0 +1,216 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.activesearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.knime.semisupervised.util.CSRMatrix;
+
+/**
+ * Estimates and residuals of an active search propagation in one universe, together with the coefficients of the
+ * linear system they belong to. The next round of an active search, which only labels some more rows, continues from
+ * them and only propagates the residual caused by the rows whose coefficients changed.
+ *
+ * @author agent
+ */
+class ActiveSearchState {
+
+    private static final int VERSION = 1;
+
+    private final long fingerprint;
+
+    private final double[] factors;
+
+    private final double[] offsets;
+
+    private final double[] estimates;
+
+    private final double[] residuals;
+
+    /**
+     * @param _fingerprint fingerprint of the graph, see {@link #fingerprint(CSRMatrix)}
+     * @param _factors factor of the relation weights of each row
+     * @param _offsets constant term of each row
+     * @param _estimates estimate of each row
+     * @param _residuals residual of each row, the estimate of the row after one more sweep minus its estimate
+     */
+    ActiveSearchState(final long _fingerprint, final double[] _factors, final double[] _offsets,
+                      final double[] _estimates, final double[] _residuals) {
+        this.fingerprint = _fingerprint;
+        this.factors = _factors;
+        this.offsets = _offsets;
+        this.estimates = _estimates;
+        this.residuals = _residuals;
+    }
+
+    /**
+     * @param graph the normalized relation weights
+     * @return fingerprint of the structure and the weights of the graph
+     */
+    static long fingerprint(final CSRMatrix graph) {
+        long res = graph.numRows();
+        for (int i = 0; i <= graph.numRows(); i++) {
+            res = 31 * res + graph.rowPointers()[i];
+        }
+        for (int k = 0; k < graph.nnz(); k++) {
+            res = 31 * res + graph.columnIndices()[k];
+            res = 31 * res + Double.doubleToLongBits(graph.values()[k]);
+        }
+        return res;
+    }
+
+    /**
+     * @param _fingerprint fingerprint of the current graph
+     * @param numPoints current number of points
+     * @return <code>true</code> if this state belongs to the current graph
+     */
+    boolean matches(final long _fingerprint, final int numPoints) {
+        return fingerprint == _fingerprint && estimates.length == numPoints;
+    }
+
+    /**
+     * @return factor of the relation weights of each row
+     */
+    double[] factors() {
+        return factors;
+    }
+
+    /**
+     * @return constant term of each row
+     */
+    double[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * @return estimate of each row
+     */
+    double[] estimates() {
+        return estimates;
+    }
+
+    /**
+     * @return residual of each row
+     */
+    double[] residuals() {
+        return residuals;
+    }
+
+    /**
+     * @param states state of each universe
+     * @param file file to write to
+     * @throws IOException
+     */
+    static void save(final Map<String, ActiveSearchState> states, final File file) throws IOException {
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(VERSION);
+            out.writeInt(states.size());
+            for (final Entry<String, ActiveSearchState> entry : states.entrySet()) {
+                final ActiveSearchState state = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(state.fingerprint);
+                out.writeInt(state.estimates.length);
+                for (int i = 0; i < state.estimates.length; i++) {
+                    out.writeDouble(state.factors[i]);
+                    out.writeDouble(state.offsets[i]);
+                    out.writeDouble(state.estimates[i]);
+                    out.writeDouble(state.residuals[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param file file written by {@link #save(Map, File)}
+     * @return state of each universe
+     * @throws IOException
+     */
+    static Map<String, ActiveSearchState> load(final File file) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version of active search state: " + version);
+            }
+            final Map<String, ActiveSearchState> states = new LinkedHashMap<String, ActiveSearchState>();
+            final int numUniverses = in.readInt();
+            for (int u = 0; u < numUniverses; u++) {
+                final String universe = in.readUTF();
+                final long fingerprint = in.readLong();
+                final int numPoints = in.readInt();
+                final double[] factors = new double[numPoints];
+                final double[] offsets = new double[numPoints];
+                final double[] estimates = new double[numPoints];
+                final double[] residuals = new double[numPoints];
+                for (int i = 0; i < numPoints; i++) {
+                    factors[i] = in.readDouble();
+                    offsets[i] = in.readDouble();
+                    estimates[i] = in.readDouble();
+                    residuals[i] = in.readDouble();
+                }
+                states.put(universe, new ActiveSearchState(fingerprint, factors, offsets, estimates, residuals));
+            }
+            return states;
+        }
+    }
+}
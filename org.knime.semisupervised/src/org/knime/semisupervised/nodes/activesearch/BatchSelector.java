@@ -0,0 +1,318 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.activesearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.semisupervised.util.Labeled;
+
+/**
+ * Selects the next batch of unlabeled rows to label. The rows are offered one by one while the results are written,
+ * only the best rows of each universe and across universes are kept in bounded heaps, hence the full table is never
+ * sorted.
+ * <p>
+ * A diverse batch skips rows within a number of hops of an already selected row in any universe, as labeling both
+ * tells little more than labeling one of them. For this the heaps keep {@link #DIVERSITY_POOL} times the batch size
+ * rows, but never more than there are rows. Should the batch still not be full, it is filled up with the best skipped
+ * rows.
+ *
+ * @author agent
+ */
+final class BatchSelector {
+
+    /** candidates kept for a diverse batch, in multiples of the batch size */
+    static final int DIVERSITY_POOL = 8;
+
+    /**
+     * How the rankings of the universes are combined.
+     */
+    enum Strategy implements Labeled {
+        /** best scores of the rows, their score is the maximum over the universes */
+        ACROSS("Best across universes"),
+        /** best rows of each universe in turn: the best of every universe, then the second best and so on */
+        ROUND_ROBIN("Best of each universe in turn");
+
+        private final String label;
+
+        private Strategy(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * A selected row.
+     */
+    static final class Pick {
+
+        /** index of the row */
+        final int row;
+
+        /** universe of the ranking the row was taken from, <code>-1</code> for the ranking across universes */
+        final int universe;
+
+        /** score of the row in that ranking */
+        final double score;
+
+        Pick(final int _row, final int _universe, final double _score) {
+            this.row = _row;
+            this.universe = _universe;
+            this.score = _score;
+        }
+    }
+
+    private final int batchSize;
+
+    private final TopK[] universes;
+
+    private final TopK across;
+
+    /**
+     * @param numUniverses number of universes
+     * @param _batchSize number of rows to select
+     * @param diverse <code>true</code> if more candidates have to be kept for a diverse batch
+     * @param numRows number of rows, no heap holds more
+     */
+    BatchSelector(final int numUniverses, final int _batchSize, final boolean diverse, final int numRows) {
+        this.batchSize = _batchSize;
+        final int capacity =
+                (int)Math.min(numRows, diverse ? (long)_batchSize * DIVERSITY_POOL : (long)_batchSize);
+        this.universes = new TopK[numUniverses];
+        for (int u = 0; u < numUniverses; u++) {
+            universes[u] = new TopK(capacity);
+        }
+        this.across = new TopK(capacity);
+    }
+
+    /**
+     * @param universe the universe
+     * @param row index of an unlabeled row
+     * @param score score of the row in the universe
+     */
+    void offer(final int universe, final int row, final double score) {
+        universes[universe].offer(row, score);
+    }
+
+    /**
+     * @param row index of an unlabeled row
+     * @param score score of the row across all universes
+     */
+    void offerAcross(final int row, final double score) {
+        across.offer(row, score);
+    }
+
+    /**
+     * @param strategy how the rankings are combined
+     * @param neighborhoods neighborhoods of the rows in each universe whose rows are skipped once a row is selected,
+     *            <code>null</code> for no diversity
+     * @param numRows number of rows
+     * @return the selected rows, best first
+     */
+    List<Pick> select(final Strategy strategy, final NeighborhoodScorer[] neighborhoods, final int numRows) {
+        // candidates in the order they are considered
+        final List<Pick> candidates = new ArrayList<Pick>();
+        if (strategy == Strategy.ACROSS) {
+            across.drainTo(-1, candidates);
+        } else {
+            final List<List<Pick>> rankings = new ArrayList<List<Pick>>();
+            int longest = 0;
+            for (int u = 0; u < universes.length; u++) {
+                final List<Pick> ranking = new ArrayList<Pick>();
+                universes[u].drainTo(u, ranking);
+                rankings.add(ranking);
+                longest = Math.max(longest, ranking.size());
+            }
+            for (int r = 0; r < longest; r++) {
+                for (final List<Pick> ranking : rankings) {
+                    if (r < ranking.size()) {
+                        candidates.add(ranking.get(r));
+                    }
+                }
+            }
+        }
+
+        final boolean[] taken = new boolean[numRows];
+        final boolean[] blocked = neighborhoods == null ? null : new boolean[numRows];
+        final List<Pick> batch = new ArrayList<Pick>(Math.min(batchSize, candidates.size()));
+        final List<Pick> skipped = new ArrayList<Pick>();
+        for (final Pick candidate : candidates) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            if (taken[candidate.row]) {
+                continue;
+            }
+            if (blocked != null && blocked[candidate.row]) {
+                skipped.add(candidate);
+                continue;
+            }
+            taken[candidate.row] = true;
+            batch.add(candidate);
+            if (blocked != null) {
+                for (final NeighborhoodScorer neighborhood : neighborhoods) {
+                    for (final int j : neighborhood.neighborhood(candidate.row)) {
+                        blocked[j] = true;
+                    }
+                }
+            }
+        }
+
+        for (final Pick candidate : skipped) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            if (!taken[candidate.row]) {
+                taken[candidate.row] = true;
+                batch.add(candidate);
+            }
+        }
+        return batch;
+    }
+
+    /*
+     * Bounded min-heap of the rows with the highest scores. Ties are broken by the row index, the lower index wins,
+     * hence the result does not depend on the order the rows are offered in.
+     */
+    private static final class TopK {
+
+        private final int[] rows;
+
+        private final double[] scores;
+
+        private int size;
+
+        TopK(final int capacity) {
+            this.rows = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        void offer(final int row, final double score) {
+            if (size < rows.length) {
+                rows[size] = row;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (size > 0 && worse(rows[0], scores[0], row, score)) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        /*
+         * Appends the rows best first and empties the heap.
+         */
+        void drainTo(final int universe, final List<Pick> picks) {
+            final Pick[] sorted = new Pick[size];
+            while (size > 0) {
+                sorted[size - 1] = new Pick(rows[0], universe, scores[0]);
+                size--;
+                rows[0] = rows[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            for (final Pick pick : sorted) {
+                picks.add(pick);
+            }
+        }
+
+        private static boolean worse(final int rowA, final double scoreA, final int rowB, final double scoreB) {
+            final int cmp = Double.compare(scoreA, scoreB);
+            return cmp < 0 || (cmp == 0 && rowA > rowB);
+        }
+
+        private void siftUp(final int start) {
+            int i = start;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (!worse(rows[i], scores[i], rows[parent], scores[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(final int start) {
+            int i = start;
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                int worst = left;
+                if (left + 1 < size && worse(rows[left + 1], scores[left + 1], rows[left], scores[left])) {
+                    worst = left + 1;
+                }
+                if (!worse(rows[worst], scores[worst], rows[i], scores[i])) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(final int a, final int b) {
+            final int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            final double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
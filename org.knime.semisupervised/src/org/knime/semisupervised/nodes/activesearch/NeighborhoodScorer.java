@@ -0,0 +1,177 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.activesearch;
+
+import java.util.Arrays;
+
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Lookahead scores of the points of a neighbor graph. The score of a point at depth <code>d</code> mixes its estimate
+ * with the mean score at depth <code>d - 1</code> of its neighbors, the score at depth zero is the estimate itself.
+ * The scores of all points are computed level by level, one pass over the graph per level, instead of recursively per
+ * point. The points within <code>d</code> hops of a point are resolved on demand and cached as index arrays.
+ *
+ * @author agent
+ */
+final class NeighborhoodScorer {
+
+    /** number of non-zeros of the graph per task of a level */
+    private static final int PART_NON_ZEROS = 4096;
+
+    private final CSRMatrix graph;
+
+    private final int depth;
+
+    /** points within depth hops of each point, resolved on demand */
+    private final int[][] neighborhoods;
+
+    /** marks of the breadth-first search, the stamp of a search marks the points it reached */
+    private final int[] marks;
+
+    private int stamp;
+
+    /**
+     * @param _graph the neighbors of each point, only the structure is used
+     * @param _depth number of hops to look ahead
+     */
+    NeighborhoodScorer(final CSRMatrix _graph, final int _depth) {
+        this.graph = _graph;
+        this.depth = _depth;
+        this.neighborhoods = new int[_graph.numRows()][];
+        this.marks = new int[_graph.numRows()];
+    }
+
+    /**
+     * @param estimates estimate of each point
+     * @param alpha weight of the estimate of a point against the mean score of its neighbors
+     * @param parallel engine to run on
+     * @return the score of each point at the depth of this scorer
+     */
+    double[] score(final double[] estimates, final double alpha, final ParallelRange parallel) {
+        final int[] rowPointers = graph.rowPointers();
+        final int[] columnIndices = graph.columnIndices();
+        final int[] parts = graph.partitionRows(Math.min(ParallelRange.MAX_CHUNKS, 1 + graph.nnz() / PART_NON_ZEROS));
+
+        double[] scores = estimates.clone();
+        double[] next = new double[scores.length];
+        for (int level = 1; level <= depth; level++) {
+            final double[] previous = scores;
+            final double[] current = next;
+            parallel.forEach(parts.length - 1, 1, new ParallelRange.Body() {
+                @Override
+                public void apply(final int from, final int to) {
+                    for (int i = parts[from]; i < parts[to]; i++) {
+                        final int numNeighbors = rowPointers[i + 1] - rowPointers[i];
+                        if (numNeighbors == 0) {
+                            // nothing to look ahead
+                            current[i] = estimates[i];
+                            continue;
+                        }
+                        double total = 0;
+                        for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                            total += previous[columnIndices[k]];
+                        }
+                        current[i] = alpha * estimates[i] + (1 - alpha) * total / numNeighbors;
+                    }
+                }
+            });
+            next = previous;
+            scores = current;
+        }
+        return scores;
+    }
+
+    /**
+     * @param point a point
+     * @return the other points within depth hops of the point, in the order they are reached
+     */
+    synchronized int[] neighborhood(final int point) {
+        if (neighborhoods[point] != null) {
+            return neighborhoods[point];
+        }
+
+        final int[] rowPointers = graph.rowPointers();
+        final int[] columnIndices = graph.columnIndices();
+        if (++stamp == 0) {
+            // the stamps wrapped around
+            Arrays.fill(marks, 0);
+            stamp = 1;
+        }
+        marks[point] = stamp;
+
+        // breadth-first search, the reached points are the queue and start with the point itself
+        int[] reached = new int[1 + rowPointers[point + 1] - rowPointers[point]];
+        reached[0] = point;
+        int size = 1;
+        int levelStart = 0;
+        for (int level = 0; level < depth && levelStart < size; level++) {
+            final int levelEnd = size;
+            for (int q = levelStart; q < levelEnd; q++) {
+                final int p = reached[q];
+                for (int k = rowPointers[p]; k < rowPointers[p + 1]; k++) {
+                    final int j = columnIndices[k];
+                    if (marks[j] != stamp) {
+                        marks[j] = stamp;
+                        if (size == reached.length) {
+                            reached = Arrays.copyOf(reached, 2 * size);
+                        }
+                        reached[size++] = j;
+                    }
+                }
+            }
+            levelStart = levelEnd;
+        }
+
+        neighborhoods[point] = Arrays.copyOfRange(reached, 1, size);
+        return neighborhoods[point];
+    }
+}
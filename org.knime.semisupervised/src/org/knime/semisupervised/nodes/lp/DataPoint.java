@@ -1,12 +1,7 @@
 package org.knime.semisupervised.nodes.lp;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-
 import org.knime.core.data.DataRow;
 import org.knime.core.data.RowKey;
-import org.knime.core.util.Pair;
 import org.knime.paruni.Utils;
 
 /**
@@ -16,12 +11,13 @@ import org.knime.paruni.Utils;
  */
 class DataPoint {
 
-    public final HashMap<Integer, double[]> assignedDistributions;
-
     public final double[] vector;
 
     public final RowKey rowKey;
 
+    /** position of the point in the neighbor graph */
+    public final int index;
+
     public String classLabel = "?";
 
     public double tmp;
@@ -30,26 +26,22 @@ class DataPoint {
 
     public double uncertainty2;
 
-    private List<Pair<DataPoint, Double>> neighbors;
-
-    public DataPoint(final DataRow filteredRow, final String label) {
+    public DataPoint(final DataRow filteredRow, final String label, final int _index) {
         this.rowKey = filteredRow.getKey();
         this.classLabel = label;
+        this.index = _index;
         this.vector = Utils.toDoubleArray(filteredRow);
-        this.assignedDistributions = new HashMap<Integer, double[]>();
-        this.neighbors = new ArrayList<Pair<DataPoint, Double>>();
     }
 
-    public DataPoint(final DataPoint point) {
+    /**
+     * @param point point to copy
+     * @param _index new position of the point in the neighbor graph
+     */
+    public DataPoint(final DataPoint point, final int _index) {
         this.rowKey = point.rowKey;
         this.classLabel = point.classLabel;
+        this.index = _index;
         this.vector = point.vector;
-        this.assignedDistributions = new HashMap<Integer, double[]>();
-        this.neighbors = point.neighbors;
-    }
-
-    public final void putDistributionAt(final int idx, final double[] dist) {
-        assignedDistributions.put(idx, dist);
     }
 
     /**
@@ -58,63 +50,4 @@ class DataPoint {
     public final void setLabel(final String label) {
         classLabel = label;
     }
-
-    /**
-     * @param idx
-     * @return distribution
-     */
-    public final double[] dist(final int idx) {
-        return assignedDistributions.get(idx);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean equals(final Object obj) {
-        if (obj instanceof DataPoint) {
-            return ((DataPoint)obj).rowKey.getString().equalsIgnoreCase(rowKey.getString());
-        } else {
-            return false;
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public int hashCode() {
-        return super.hashCode();
-    }
-
-    /**
-     *
-     */
-    public void updateUsingNeighbors(final int distributionIdxToStore) {
-        final double[] res = new double[assignedDistributions.get(0).length];
-
-        for (Pair<DataPoint, Double> pair : neighbors) {
-            final double weight = pair.getSecond();
-            final double[] dist = pair.getFirst().dist(0);
-            double total = 0;
-            for (int d = 0; d < res.length; d++) {
-                res[d] += weight * dist[d];
-                total += res[d];
-            }
-
-            if (total != 0) {
-                for (int d = 0; d < res.length; d++) {
-                    res[d] /= total;
-                }
-            }
-        }
-        assignedDistributions.put(distributionIdxToStore, res);
-    }
-
-    /**
-     * @param neighbor
-     */
-    public void addNeigbor(final DataPoint neighbor, final double weight) {
-        neighbors.add(new Pair<DataPoint, Double>(neighbor, weight));
-    }
 }
@@ -49,18 +49,17 @@
  */
 package org.knime.semisupervised.nodes.lp;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import org.knime.base.util.kdtree.KDTree;
 import org.knime.base.util.kdtree.NearestNeighbour;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
-import org.knime.core.util.ThreadPool;
-import org.knime.paruni.Utils;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.Labeled;
+import org.knime.semisupervised.util.ParallelRange;
 
 /**
  *
@@ -68,107 +67,299 @@ import org.knime.paruni.Utils;
  */
 public class LabelPropagation {
 
+    /*
+     * Minimal number of kNN queries per task when building the graph.
+     */
+    private static final int QUERY_CHUNK_SIZE = 64;
+
+    /**
+     * Norms of the change of the distributions between two iterations, used to detect convergence.
+     */
+    public enum ConvergenceNorm implements Labeled {
+        /** always run the maximum number of iterations */
+        NONE("None (fixed number of iterations)"),
+        /** mean over all points of the L1 change of their distribution */
+        L1("Mean L1 change"),
+        /** largest change of a single probability */
+        L_INF("Maximum change");
+
+        private final String label;
+
+        private ConvergenceNorm(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Methods to compute the propagated distributions.
+     */
+    public enum Solver implements Labeled {
+        /** iterate the propagation update until convergence or the maximum number of iterations */
+        ITERATIVE("Iterative update"),
+        /** solve the linear system of the fixed point with a Krylov method, see {@link LabelSpreadingSolver} */
+        KRYLOV("Krylov solver (BiCGSTAB)");
+
+        private final String label;
+
+        private Solver(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
     private double alpha;
 
     private int numIterations;
 
+    private Solver solver = Solver.ITERATIVE;
+
+    private final ConvergenceNorm norm;
+
+    private final double tolerance;
+
+    private int iterationsDone;
+
+    private double residual = Double.NaN;
+
+    private boolean converged;
+
     /**
+     * Runs exactly the given number of iterations.
+     *
      * @param _numIterations
+     * @param _alpha
      */
     public LabelPropagation(final int _numIterations, final double _alpha) {
+        this(_numIterations, _alpha, ConvergenceNorm.NONE, 0);
+    }
+
+    /**
+     * @param _numIterations maximum number of iterations
+     * @param _alpha
+     * @param _norm norm of the change between two iterations
+     * @param _tolerance stop as soon as the change (or for {@link Solver#KRYLOV} the relative residual) drops below
+     *            this value
+     */
+    public LabelPropagation(final int _numIterations, final double _alpha, final ConvergenceNorm _norm,
+                            final double _tolerance) {
         numIterations = _numIterations;
         alpha = _alpha;
+        norm = _norm;
+        tolerance = _tolerance;
+    }
+
+    /**
+     * @param _solver method to compute the propagated distributions, {@link Solver#ITERATIVE} by default
+     */
+    public void setSolver(final Solver _solver) {
+        solver = _solver;
+    }
+
+    /**
+     * @return number of iterations of the last {@link #execute}
+     */
+    public int getIterationsDone() {
+        return iterationsDone;
     }
 
     /**
-     * @param unknowns
-     * @param labeled
+     * @return change of the distributions in the last iteration, measured in the convergence norm (the maximum
+     *         change if no norm is set), or the relative residual of the linear system for {@link Solver#KRYLOV}
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return <code>true</code> if the last {@link #execute} stopped because the residual dropped below the tolerance
+     */
+    public boolean hasConverged() {
+        return converged;
+    }
+
+    /**
+     * Propagates the distributions along the graph. The result is found in {@link DistributionBuffer#current()}.
+     *
+     * @param graph neighbor graph, see {@link #buildNeighborGraph(List, KDTree, int, ParallelRange)}
+     * @param dists initial distributions of all points, one row per row of the graph
+     * @param labeled rows of the labeled points
+     * @param parallel engine to run the updates of each iteration on
      * @param monitor
      */
-    public void execute(final List<DataPoint> unknowns, final List<DataPoint> labeled, final ExecutionMonitor monitor) {
+    public void execute(final CSRMatrix graph, final DistributionBuffer dists, final BitSet labeled,
+                        final ParallelRange parallel, final ExecutionMonitor monitor) {
 
-        // for multi threading
-        final ThreadPool subPool = ThreadPool.currentPool().createSubPool(100);
-        final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
-        try {
-            for (int iteration = 0; iteration < numIterations; iteration++) {
-                for (final DataPoint u : unknowns) {
+        if (solver == Solver.KRYLOV) {
+            final LabelSpreadingSolver krylov = new LabelSpreadingSolver(alpha, numIterations, tolerance);
+            krylov.solve(graph, dists, labeled, parallel, monitor);
+            iterationsDone = krylov.getIterationsDone();
+            residual = krylov.getResidual();
+            converged = residual < tolerance;
+            return;
+        }
 
-                    final Callable<Void> callable = new Callable<Void>() {
+        final int avgDegree = graph.nnz() / Math.max(1, graph.numRows());
+        final int chunkSize = ParallelRange.cacheSizedChunk(12 * avgDegree + 8 * dists.numClasses());
 
-                        @Override
-                        public final Void call() {
-                            u.updateUsingNeighbors(1);
-                            return null;
-                        }
-                    };
+        final boolean l1 = norm == ConvergenceNorm.L1;
+        final ParallelRange.Reducer reducer = l1 ? ParallelRange.Reducer.SUM : ParallelRange.Reducer.MAX;
 
-                    futures.add(subPool.submit(callable));
+        iterationsDone = 0;
+        residual = Double.NaN;
+        converged = false;
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            final double change = parallel.reduce(graph.numRows(), chunkSize, reducer, new ParallelRange.Reduction() {
+                @Override
+                public double apply(final int from, final int to) {
+                    double res = 0;
+                    for (int row = from; row < to; row++) {
+                        final double rowChange = updateUsingNeighbors(graph, dists, row, labeled.get(row), l1);
+                        res = l1 ? res + rowChange : Math.max(res, rowChange);
+                    }
+                    return res;
                 }
+            });
 
-                for (final DataPoint labeledPoint : labeled) {
-                    final Callable<Void> callable = new Callable<Void>() {
+            // adjust posteriors
+            dists.swap();
 
-                        @Override
-                        public final Void call() {
-                            labeledPoint.updateUsingNeighbors(1);
-                            return null;
-                        }
-                    };
+            iterationsDone++;
+            residual = l1 ? change / graph.numRows() : change;
+            if (norm != ConvergenceNorm.NONE && residual < tolerance) {
+                converged = true;
+                return;
+            }
 
-                    futures.add(subPool.submit(callable));
+            try {
+                monitor.checkCanceled();
+            } catch (CanceledExecutionException e) {
+                return;
+            }
+        }
+    }
 
-                }
+    /*
+     * Writes the weighted sum of the current distributions of the neighbors of the given row, normalized to a
+     * distribution, to the next distributions. Labeled points keep (1 - alpha) of their current distribution.
+     * Returns the L1 norm (l1 == true) or the maximum norm of the change of the distribution of the row.
+     */
+    private double updateUsingNeighbors(final CSRMatrix graph, final DistributionBuffer dists, final int row,
+                                        final boolean isLabeled, final boolean l1) {
+        final int[] rowPointers = graph.rowPointers();
+        final int[] neighbors = graph.columnIndices();
+        final double[] weights = graph.values();
 
-                // waiting for results
-                for (final Future<Void> future : futures) {
-                    future.get();
-                }
+        final int numClasses = dists.numClasses();
+        final double[] current = dists.current();
+        final double[] res = dists.next();
+        final int offset = dists.offset(row);
 
-                // adjust posteriors
-                for (DataPoint unlabeledPoint : unknowns) {
-                    unlabeledPoint.putDistributionAt(0, unlabeledPoint.dist(1));
-                }
+        for (int d = offset; d < offset + numClasses; d++) {
+            res[d] = 0;
+        }
 
-                for (DataPoint labeledPoint : labeled) {
-                    labeledPoint
-                            .putDistributionAt(0, Utils.combine(labeledPoint.dist(0), labeledPoint.dist(1), 1 - alpha));
-                }
+        for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+            final double weight = weights[k];
+            final int neighborOffset = dists.offset(neighbors[k]);
+            for (int d = 0; d < numClasses; d++) {
+                res[offset + d] += weight * current[neighborOffset + d];
+            }
+        }
 
-                try {
-                    monitor.checkCanceled();
-                } catch (CanceledExecutionException e) {
-                    return;
-                }
+        double total = 0;
+        for (int d = offset; d < offset + numClasses; d++) {
+            total += res[d];
+        }
+
+        if (total != 0) {
+            for (int d = offset; d < offset + numClasses; d++) {
+                res[d] /= total;
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
         }
+
+        if (isLabeled) {
+            for (int d = offset; d < offset + numClasses; d++) {
+                res[d] = (1 - alpha) * current[d] + alpha * res[d];
+            }
+        }
+
+        double change = 0;
+        for (int d = offset; d < offset + numClasses; d++) {
+            final double diff = Math.abs(res[d] - current[d]);
+            change = l1 ? change + diff : Math.max(change, diff);
+        }
+        return change;
     }
 
     /**
-     * @param u
+     * Builds the k-nearest-neighbor graph of the given points. Row <code>i</code> of the result holds the neighbors of
+     * the point with {@link DataPoint#index} <code>i</code>, weighted by their distance and normalized to sum up to
+     * one. The tree is queried in parallel, each query writes its neighbors directly into its slots of the
+     * preallocated graph arrays.
+     *
+     * @param points all points of the tree, indexed from <code>0</code> to <code>points.size() - 1</code>
      * @param tree
      * @param numNeighbors
+     * @param parallel engine to run the queries on
+     * @return the neighbor graph
      */
-    public static void findAndSetNeighbors(final DataPoint point, final KDTree<DataPoint> tree, final int numNeighbors) {
-        final List<NearestNeighbour<DataPoint>> neighbors = tree.getKNearestNeighbours(point.vector, numNeighbors);
-
-        double[] weights = new double[neighbors.size()];
-        int k = 0;
-        double total = 0;
-        for (final NearestNeighbour<DataPoint> neighbor : neighbors) {
-            total += neighbor.getDistance();
-            weights[k++] = neighbor.getDistance();
+    public static CSRMatrix buildNeighborGraph(final List<DataPoint> points, final KDTree<DataPoint> tree,
+                                               final int numNeighbors, final ParallelRange parallel) {
+        final int numPoints = points.size();
+        if (numNeighbors < 1) {
+            throw new IllegalArgumentException("The number of neighbors must be at least 1, but is " + numNeighbors);
         }
+        final long numSlots = (long)numPoints * numNeighbors;
+        if (numSlots > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Neighbor graph too large: " + numPoints + " points times "
+                    + numNeighbors + " neighbors exceed " + Integer.MAX_VALUE + " edges");
+        }
+        final int[] neighborIndices = new int[(int)numSlots];
+        final double[] weights = new double[(int)numSlots];
+        final int[] numFound = new int[numPoints];
 
-        k = 0;
-        // normalize them to make it a distribution
-        for (final NearestNeighbour<DataPoint> neighbor : neighbors) {
-            point.addNeigbor(neighbor.getData(), weights[k++] /= total);
+        parallel.forEach(numPoints, QUERY_CHUNK_SIZE, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int i = from; i < to; i++) {
+                    final DataPoint point = points.get(i);
+                    final List<NearestNeighbour<DataPoint>> neighbors =
+                            tree.getKNearestNeighbours(point.vector, numNeighbors);
 
-        }
+                    final int offset = point.index * numNeighbors;
+                    int k = 0;
+                    double total = 0;
+                    for (final NearestNeighbour<DataPoint> neighbor : neighbors) {
+                        total += neighbor.getDistance();
+                        neighborIndices[offset + k] = neighbor.getData().index;
+                        weights[offset + k] = neighbor.getDistance();
+                        k++;
+                    }
+
+                    // normalize them to make it a distribution
+                    for (int j = offset; j < offset + k; j++) {
+                        weights[j] /= total;
+                    }
+                    numFound[point.index] = k;
+                }
+            }
+        });
+
+        return CSRMatrix.fromFixedDegree(numPoints, numPoints, numNeighbors, neighborIndices, weights, numFound);
     }
 }
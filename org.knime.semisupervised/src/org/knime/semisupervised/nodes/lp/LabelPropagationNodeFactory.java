@@ -5,8 +5,11 @@ import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.semisupervised.util.Labels;
 
 /**
  *
@@ -61,8 +64,21 @@ public class LabelPropagationNodeFactory extends NodeFactory<LabelPropagationNod
                 addDialogComponent(new DialogComponentNumber(LabelPropagationNodeModel.createNumNeighborsModel(),
                         "Number of Neighbors", 1));
 
+                addDialogComponent(new DialogComponentStringSelection(LabelPropagationNodeModel.createSolverModel(),
+                        "Solver", Labels.labels(LabelPropagation.Solver.class)));
+
                 addDialogComponent(new DialogComponentNumber(LabelPropagationNodeModel.createNumIterationsModel(),
-                        "Number of Iterations", 1));
+                        "Maximum Number of Iterations", 1));
+
+                addDialogComponent(new DialogComponentStringSelection(LabelPropagationNodeModel
+                        .createConvergenceNormModel(), "Convergence Criterion",
+                        Labels.labels(LabelPropagation.ConvergenceNorm.class)));
+
+                addDialogComponent(new DialogComponentNumber(LabelPropagationNodeModel.createToleranceModel(),
+                        "Convergence Tolerance", 1e-5));
+
+                addDialogComponent(new DialogComponentBoolean(LabelPropagationNodeModel.createWarmStartModel(),
+                        "Warm start from previous execution"));
 
                 addDialogComponent(new DialogComponentNumber(LabelPropagationNodeModel.createKernelSmoothingModel(),
                         "Number of Kernel Smoothing", 0.05));
@@ -3,7 +3,7 @@ package org.knime.semisupervised.nodes.lp;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -15,7 +15,6 @@ import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DoubleValue;
-import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
 import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DefaultRow;
@@ -30,21 +29,43 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.paruni.NodeTools;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.ChunkedRowWriter;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.LabelPartition;
+import org.knime.semisupervised.util.Labels;
+import org.knime.semisupervised.util.OptionalSettings;
+import org.knime.semisupervised.util.ParallelRange;
+import org.knime.semisupervised.util.RowIndex;
 
 /**
  * @author dietzc, University of Konstanz
  */
 public class LabelPropagationNodeModel extends NodeModel {
 
+    // keys of settings added later, older workflows lack them
+
+    private static final String CFG_CONVERGENCE_NORM = "convergence_norm";
+
+    private static final String CFG_CONVERGENCE_TOLERANCE = "convergence_tolerance";
+
+    private static final String CFG_WARM_START = "warm_start";
+
+    private static final String CFG_SOLVER = "solver";
+
     static final int LABELED_INDEX = 0;
 
     static final int UNLABELED_INDEX = 1;
 
+    private static final String STATE_FILE = "propagation_state.bin.gz";
+
     private int m_classIdx;
 
     private SettingsModelString m_classColModel = createClassColModel();
@@ -55,20 +76,28 @@ public class LabelPropagationNodeModel extends NodeModel {
 
     private SettingsModelDouble m_alphaModel = createKernelSmoothingModel();
 
+    private SettingsModelString m_convergenceNormModel = createConvergenceNormModel();
+
+    private SettingsModelDouble m_toleranceModel = createToleranceModel();
+
+    private SettingsModelBoolean m_warmStartModel = createWarmStartModel();
+
+    private SettingsModelString m_solverModel = createSolverModel();
+
     private List<String> m_classLabels;
 
     private ColumnRearranger m_featureSpecUnlabeled;
 
     private ColumnRearranger m_featureSpecLabeled;
 
-    private ArrayList<DataPoint> m_unlabeledPoints;
-
-    private ArrayList<DataPoint> m_labeledPoints;
+    private RowIndex m_rowIndex;
 
-    private HashMap<RowKey, DataPoint> m_allPoints;
+    private ArrayList<DataPoint> m_points;
 
     private KDTree<DataPoint> m_tree;
 
+    private LabelPropagationState m_state;
+
     static SettingsModelString createClassColModel() {
         return new SettingsModelString("class_col_idx", "");
     }
@@ -81,6 +110,22 @@ public class LabelPropagationNodeModel extends NodeModel {
         return new SettingsModelDouble("kernel_smoothing", 0.0);
     }
 
+    static SettingsModelString createConvergenceNormModel() {
+        return new SettingsModelString(CFG_CONVERGENCE_NORM, LabelPropagation.ConvergenceNorm.NONE.label());
+    }
+
+    static SettingsModelDouble createToleranceModel() {
+        return new SettingsModelDoubleBounded(CFG_CONVERGENCE_TOLERANCE, 1e-4, 0, Double.MAX_VALUE);
+    }
+
+    static SettingsModelString createSolverModel() {
+        return new SettingsModelString(CFG_SOLVER, LabelPropagation.Solver.ITERATIVE.label());
+    }
+
+    static SettingsModelBoolean createWarmStartModel() {
+        return new SettingsModelBoolean(CFG_WARM_START, false);
+    }
+
     static SettingsModelInteger createNumNeighborsModel() {
         return new SettingsModelIntegerBounded("neighbors", 5, -1, Integer.MAX_VALUE);
     }
@@ -103,6 +148,19 @@ public class LabelPropagationNodeModel extends NodeModel {
      */
     @Override
     protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+        if (m_numNeighborsModel.getIntValue() < 1) {
+            throw new InvalidSettingsException("The number of neighbors must be at least 1, but is "
+                    + m_numNeighborsModel.getIntValue());
+        }
+        // the right-hand side of the linear system is (1 - alpha) times the labels, with alpha = 1 it is zero and
+        // the solver returns zero distributions as converged
+        final double alpha = m_alphaModel.getDoubleValue();
+        if (m_solverModel.getStringValue().equals(LabelPropagation.Solver.KRYLOV.label())
+                && (alpha < 0 || alpha >= 1)) {
+            throw new InvalidSettingsException("The Krylov solver requires a kernel smoothing in [0, 1), but it is "
+                    + alpha);
+        }
+
         m_classIdx = -1;
         m_classIdx = NodeTools.silentOptionalAutoColumnSelection(inSpecs[1], m_classColModel, StringValue.class);
 
@@ -149,84 +207,159 @@ public class LabelPropagationNodeModel extends NodeModel {
                             .silentOptionalAutoColumnSelection(inData[1].getSpec(), m_classColModel, StringValue.class);
         }
 
-        // extract the points
-        m_allPoints = new HashMap<RowKey, DataPoint>();
-
-        m_unlabeledPoints = new ArrayList<DataPoint>();
+        // extract the points, every row key gets a dense index, rows contained in both tables are kept once
+        m_rowIndex = new RowIndex(inData[UNLABELED_INDEX].getRowCount() + inData[LABELED_INDEX].getRowCount());
 
-        m_labeledPoints = new ArrayList<DataPoint>();
+        m_points = new ArrayList<DataPoint>();
 
-        // store all points in unlabeled
-        extractUnlabeledPoints(inData[UNLABELED_INDEX], m_featureSpecUnlabeled, exec);
+        extractPoints(inData[UNLABELED_INDEX], m_featureSpecUnlabeled, exec);
 
-        extractUnlabeledPoints(inData[LABELED_INDEX], m_featureSpecLabeled, exec);
+        extractPoints(inData[LABELED_INDEX], m_featureSpecLabeled, exec);
 
-        KDTreeBuilder<DataPoint> treeBuilder = new KDTreeBuilder<DataPoint>(m_unlabeledPoints.get(0).vector.length);
+        final int numNeighbors = m_numNeighborsModel.getIntValue();
+        final long fingerprint = LabelPropagationState.fingerprint(m_points);
+        final boolean warmStart =
+                m_warmStartModel.getBooleanValue() && m_state != null
+                        && m_state.matches(fingerprint, numNeighbors, m_points.size()) && reindexPoints(m_state);
 
-        // since now all points are stored in unlabeled
-        for (final DataPoint unlabeled : m_unlabeledPoints) {
-            treeBuilder.addPattern(unlabeled.vector, unlabeled);
-        }
-
-        m_tree = treeBuilder.buildTree();
+        final ParallelRange parallel = new ParallelRange();
+        final LabelPropagation algo;
+        final DistributionBuffer dists;
+        final CSRMatrix graph;
+        final BufferedDataContainer container;
+        try {
+            if (warmStart) {
+                // same points as in the previous execution, reuse its neighbor graph
+                graph = m_state.graph();
+            } else {
+                KDTreeBuilder<DataPoint> treeBuilder = new KDTreeBuilder<DataPoint>(m_points.get(0).vector.length);
 
-        // construct neighbor graph and initialize weights
-        for (final DataPoint p : m_unlabeledPoints) {
-            LabelPropagation.findAndSetNeighbors(p, m_tree, m_numNeighborsModel.getIntValue());
-            p.putDistributionAt(0, new double[m_classLabels.size()]);
-        }
+                for (final DataPoint p : m_points) {
+                    treeBuilder.addPattern(p.vector, p);
+                }
 
-        for (final DataPoint p : m_labeledPoints) {
-            LabelPropagation.findAndSetNeighbors(p, m_tree, m_numNeighborsModel.getIntValue());
-            double[] dist = new double[m_classLabels.size()];
-            dist[m_classLabels.indexOf(p.classLabel)] = 1;
-            p.putDistributionAt(0, dist);
-        }
+                m_tree = treeBuilder.buildTree();
 
-        // add the newly labeled rows
-        handleNewlyLabeledKeys(inData[LABELED_INDEX], exec);
+                // construct neighbor graph
+                graph = LabelPropagation.buildNeighborGraph(m_points, m_tree, numNeighbors, parallel);
+            }
 
-        LabelPropagation algo = new LabelPropagation(m_numIterations.getIntValue(), m_alphaModel.getDoubleValue());
+            // add the newly labeled rows
+            final LabelPartition partition = new LabelPartition(m_points.size());
+            final int[] classOf = handleNewlyLabeledKeys(inData[LABELED_INDEX], partition);
 
-        algo.execute(m_unlabeledPoints, m_labeledPoints, exec);
+            // initialize the distributions: labeled points are certain, all others start empty or, if warm started,
+            // with the distributions of the previous execution
+            dists = new DistributionBuffer(graph.numRows(), m_classLabels.size());
+            if (warmStart) {
+                m_state.initDistributions(m_classLabels, dists);
+            }
+            for (final int idx : partition.labeledIndices()) {
+                final int offset = dists.offset(idx);
+                Arrays.fill(dists.current(), offset, offset + dists.numClasses(), 0);
+                dists.current()[offset + classOf[idx]] = 1;
+            }
 
-        final BufferedDataContainer container = exec.createDataContainer(createResSpec());
-        for (final DataPoint unlabeled : m_unlabeledPoints) {
-            DoubleCell[] classes = new DoubleCell[m_classLabels.size()];
+            algo =
+                    new LabelPropagation(m_numIterations.getIntValue(), m_alphaModel.getDoubleValue(),
+                            Labels.fromLabel(LabelPropagation.ConvergenceNorm.class,
+                                             m_convergenceNormModel.getStringValue()),
+                            m_toleranceModel.getDoubleValue());
+            algo.setSolver(Labels.fromLabel(LabelPropagation.Solver.class, m_solverModel.getStringValue()));
+
+            algo.execute(graph, dists, partition.labeled(), parallel, exec);
+
+            if (m_warmStartModel.getBooleanValue()) {
+                m_state =
+                        new LabelPropagationState(fingerprint, numNeighbors, m_rowIndex, graph,
+                                new ArrayList<String>(m_classLabels), dists.current());
+            } else {
+                m_state = null;
+            }
 
-            for (int i = 0; i < m_classLabels.size(); i++) {
-                classes[i] = new DoubleCell(unlabeled.dist(0)[i]);
+            pushFlowVariableInt("lp_iterations", algo.getIterationsDone());
+            pushFlowVariableDouble("lp_residual", algo.getResidual());
+            final boolean checkConvergence =
+                    !m_convergenceNormModel.getStringValue().equals(LabelPropagation.ConvergenceNorm.NONE.label())
+                            || m_solverModel.getStringValue().equals(LabelPropagation.Solver.KRYLOV.label());
+            if (checkConvergence && !algo.hasConverged()) {
+                setWarningMessage("Label propagation did not converge within " + algo.getIterationsDone()
+                        + " iterations (residual " + algo.getResidual() + ")");
             }
-            container.addRowToTable(new DefaultRow(unlabeled.rowKey, classes));
-        }
 
-        container.close();
+            // no more iterations follow and the row keys are kept by the row index, free the points and the second
+            // distribution buffer before writing
+            dists.releaseNext();
+            m_tree = null;
+            m_points = null;
+            final RowIndex rowIndex = m_rowIndex;
+            m_rowIndex = null;
+
+            final int[] unlabeled = partition.unlabeledIndices();
+            final int numClasses = m_classLabels.size();
+            final double[] current = dists.current();
+            container = exec.createDataContainer(createResSpec());
+            new ChunkedRowWriter() {
+                @Override
+                protected DataRow createRow(final int i) {
+                    final int offset = dists.offset(unlabeled[i]);
+                    final DoubleCell[] classes = new DoubleCell[numClasses];
+                    for (int c = 0; c < numClasses; c++) {
+                        classes[c] = new DoubleCell(current[offset + c]);
+                    }
+                    return new DefaultRow(rowIndex.key(unlabeled[i]), classes);
+                }
+            }.write(unlabeled.length, container, parallel, exec);
+            container.close();
+        } finally {
+            parallel.shutdown();
+        }
 
         return new BufferedDataTable[]{container.getTable()};
     }
 
-    private void extractUnlabeledPoints(final BufferedDataTable table, final ColumnRearranger rearranger,
-                                        final ExecutionContext exec) throws CanceledExecutionException {
+    private void extractPoints(final BufferedDataTable table, final ColumnRearranger rearranger,
+                               final ExecutionContext exec) throws CanceledExecutionException {
 
         final Iterator<DataRow> rowFeatureIt = exec.createColumnRearrangeTable(table, rearranger, exec).iterator();
-        final Iterator<DataRow> rowCompleteIt = table.iterator();
 
         while (rowFeatureIt.hasNext()) {
-            DataRow row = rowCompleteIt.next();
-            DataPoint p = new DataPoint(rowFeatureIt.next(), null);
-
-            m_unlabeledPoints.add(p);
-            m_allPoints.put(row.getKey(), p);
+            final DataRow row = rowFeatureIt.next();
+            final int idx = m_rowIndex.intern(row.getKey());
+            if (idx == m_points.size()) {
+                m_points.add(new DataPoint(row, null, idx));
+            }
         }
     }
 
-    private void handleNewlyLabeledKeys(final BufferedDataTable table, final ExecutionContext exec) {
+    /*
+     * Moves all points to the rows they have in the graph of the given state. Returns false if a point is not part of
+     * the state.
+     */
+    private boolean reindexPoints(final LabelPropagationState state) {
+        final RowIndex stateIndex = state.rowIndex();
+        final DataPoint[] reindexed = new DataPoint[m_points.size()];
+        for (final DataPoint p : m_points) {
+            final int row = stateIndex.indexOf(p.rowKey);
+            if (row < 0 || reindexed[row] != null) {
+                return false;
+            }
+            reindexed[row] = new DataPoint(p, row);
+        }
+
+        m_points = new ArrayList<DataPoint>(Arrays.asList(reindexed));
+        m_rowIndex = stateIndex;
+        return true;
+    }
 
-        final Iterator<DataRow> rowCompleteIt = table.iterator();
+    /*
+     * Marks the rows of the table as labeled and returns the index of the class of each labeled row.
+     */
+    private int[] handleNewlyLabeledKeys(final BufferedDataTable table, final LabelPartition partition) {
+        final int[] classOf = new int[partition.size()];
 
         String clazz = null;
-        while (rowCompleteIt.hasNext()) {
-            DataRow row = rowCompleteIt.next();
+        for (final DataRow row : table) {
             if (m_classIdx != -1) {
 
                 clazz = ((StringValue)row.getCell(m_classIdx)).getStringValue();
@@ -234,12 +367,11 @@ public class LabelPropagationNodeModel extends NodeModel {
                     m_classLabels.add(clazz);
                 }
             }
-            DataPoint dataPoint = m_allPoints.get(row.getKey());
-            dataPoint.setLabel(clazz);
-
-            m_labeledPoints.add(dataPoint);
-            m_unlabeledPoints.remove(dataPoint);
+            final int idx = m_rowIndex.indexOf(row.getKey());
+            partition.label(idx);
+            classOf[idx] = m_classLabels.indexOf(clazz);
         }
+        return classOf;
     }
 
     private DataTableSpec createResSpec() {
@@ -266,7 +398,7 @@ public class LabelPropagationNodeModel extends NodeModel {
      */
     @Override
     protected void reset() {
-        // Nothing to do since now
+        // the propagation state is kept on purpose, the next execution may warm start from it
     }
 
     /**
@@ -275,7 +407,8 @@ public class LabelPropagationNodeModel extends NodeModel {
     @Override
     protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // Nothing to do here
+        final File stateFile = new File(nodeInternDir, STATE_FILE);
+        m_state = stateFile.exists() ? LabelPropagationState.load(stateFile) : null;
     }
 
     /**
@@ -284,7 +417,9 @@ public class LabelPropagationNodeModel extends NodeModel {
     @Override
     protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // Nothing to do here
+        if (m_state != null) {
+            m_state.save(new File(nodeInternDir, STATE_FILE));
+        }
     }
 
     /**
@@ -296,6 +431,10 @@ public class LabelPropagationNodeModel extends NodeModel {
         m_numNeighborsModel.saveSettingsTo(settings);
         m_alphaModel.saveSettingsTo(settings);
         m_numIterations.saveSettingsTo(settings);
+        m_convergenceNormModel.saveSettingsTo(settings);
+        m_toleranceModel.saveSettingsTo(settings);
+        m_warmStartModel.saveSettingsTo(settings);
+        m_solverModel.saveSettingsTo(settings);
     }
 
     /**
@@ -307,6 +446,10 @@ public class LabelPropagationNodeModel extends NodeModel {
         m_numNeighborsModel.validateSettings(settings);
         m_alphaModel.validateSettings(settings);
         m_numIterations.validateSettings(settings);
+        OptionalSettings.validate(m_convergenceNormModel, CFG_CONVERGENCE_NORM, settings);
+        OptionalSettings.validate(m_toleranceModel, CFG_CONVERGENCE_TOLERANCE, settings);
+        OptionalSettings.validate(m_warmStartModel, CFG_WARM_START, settings);
+        OptionalSettings.validate(m_solverModel, CFG_SOLVER, settings);
     }
 
     /**
@@ -318,5 +461,9 @@ public class LabelPropagationNodeModel extends NodeModel {
         m_numNeighborsModel.loadSettingsFrom(settings);
         m_alphaModel.loadSettingsFrom(settings);
         m_numIterations.loadSettingsFrom(settings);
+        OptionalSettings.load(m_convergenceNormModel, CFG_CONVERGENCE_NORM, settings);
+        OptionalSettings.load(m_toleranceModel, CFG_CONVERGENCE_TOLERANCE, settings);
+        OptionalSettings.load(m_warmStartModel, CFG_WARM_START, settings);
+        OptionalSettings.load(m_solverModel, CFG_SOLVER, settings);
     }
 }
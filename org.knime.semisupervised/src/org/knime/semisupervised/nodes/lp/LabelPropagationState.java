@@ -0,0 +1,264 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.lp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.knime.core.data.RowKey;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.RowIndex;
+
+/**
+ * Neighbor graph and converged distributions of a label propagation run. A later run on the same points (e.g. the
+ * next round of an active learning loop, which only labels some more rows) can reuse the graph and start from the
+ * distributions of this run instead of from scratch.
+ *
+ * @author agent
+ */
+class LabelPropagationState {
+
+    private static final int VERSION = 1;
+
+    private final long fingerprint;
+
+    private final int numNeighbors;
+
+    private final RowIndex rowIndex;
+
+    private final CSRMatrix graph;
+
+    private final List<String> classLabels;
+
+    private final double[] distributions;
+
+    /**
+     * @param _fingerprint fingerprint of the points, see {@link #fingerprint(List)}
+     * @param _numNeighbors number of neighbors the graph was built with
+     * @param _rowIndex row key of each row of the graph
+     * @param _graph the neighbor graph
+     * @param _classLabels class of each column of the distributions
+     * @param _distributions row-major distributions, one row per row of the graph
+     */
+    LabelPropagationState(final long _fingerprint, final int _numNeighbors, final RowIndex _rowIndex,
+                          final CSRMatrix _graph, final List<String> _classLabels, final double[] _distributions) {
+        this.fingerprint = _fingerprint;
+        this.numNeighbors = _numNeighbors;
+        this.rowIndex = _rowIndex;
+        this.graph = _graph;
+        this.classLabels = _classLabels;
+        this.distributions = _distributions;
+    }
+
+    /**
+     * Order independent fingerprint of row keys and feature vectors of the points.
+     *
+     * @param points the points
+     * @return the fingerprint
+     */
+    static long fingerprint(final List<DataPoint> points) {
+        long res = points.size();
+        for (final DataPoint p : points) {
+            long h = p.rowKey.getString().hashCode();
+            for (final double v : p.vector) {
+                h = 31 * h + Double.doubleToLongBits(v);
+            }
+            // mix the bits such that the sum does not cancel out similar rows
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            res += h;
+        }
+        return res;
+    }
+
+    /**
+     * @param _fingerprint fingerprint of the current points
+     * @param _numNeighbors current number of neighbors
+     * @param numPoints current number of points
+     * @return <code>true</code> if the graph of this state is the graph of the current points
+     */
+    boolean matches(final long _fingerprint, final int _numNeighbors, final int numPoints) {
+        return fingerprint == _fingerprint && numNeighbors == _numNeighbors && rowIndex.size() == numPoints;
+    }
+
+    /**
+     * @return row key of each row of the graph
+     */
+    RowIndex rowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * @return the neighbor graph
+     */
+    CSRMatrix graph() {
+        return graph;
+    }
+
+    /**
+     * Copies the stored distributions into the current distributions of the buffer. Columns are matched by class
+     * label, classes unknown to this state start with probability zero.
+     *
+     * @param _classLabels class of each column of the buffer
+     * @param dists buffer to initialize
+     */
+    void initDistributions(final List<String> _classLabels, final DistributionBuffer dists) {
+        final double[] current = dists.current();
+        Arrays.fill(current, 0);
+        final int numClasses = classLabels.size();
+        for (int c = 0; c < numClasses; c++) {
+            final int target = _classLabels.indexOf(classLabels.get(c));
+            if (target < 0) {
+                continue;
+            }
+            for (int i = 0; i < rowIndex.size(); i++) {
+                current[dists.offset(i) + target] = distributions[i * numClasses + c];
+            }
+        }
+    }
+
+    /**
+     * @param file file to write to
+     * @throws IOException
+     */
+    void save(final File file) throws IOException {
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(numNeighbors);
+
+            out.writeInt(rowIndex.size());
+            for (int i = 0; i < rowIndex.size(); i++) {
+                out.writeUTF(rowIndex.key(i).getString());
+            }
+
+            out.writeInt(graph.numCols());
+            for (int i = 0; i <= graph.numRows(); i++) {
+                out.writeInt(graph.rowPointers()[i]);
+            }
+            for (int k = 0; k < graph.nnz(); k++) {
+                out.writeInt(graph.columnIndices()[k]);
+                out.writeDouble(graph.values()[k]);
+            }
+
+            out.writeInt(classLabels.size());
+            for (final String label : classLabels) {
+                out.writeUTF(label);
+            }
+            for (int i = 0; i < rowIndex.size() * classLabels.size(); i++) {
+                out.writeDouble(distributions[i]);
+            }
+        }
+    }
+
+    /**
+     * @param file file written by {@link #save(File)}
+     * @return the state
+     * @throws IOException
+     */
+    static LabelPropagationState load(final File file) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version of label propagation state: " + version);
+            }
+            final long fingerprint = in.readLong();
+            final int numNeighbors = in.readInt();
+
+            final int numRows = in.readInt();
+            final RowIndex rowIndex = new RowIndex(numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (rowIndex.intern(new RowKey(in.readUTF())) != i) {
+                    throw new IOException("Duplicate row key in label propagation state");
+                }
+            }
+
+            final int numCols = in.readInt();
+            final int[] rowPointers = new int[numRows + 1];
+            for (int i = 0; i <= numRows; i++) {
+                rowPointers[i] = in.readInt();
+            }
+            final int[] columnIndices = new int[rowPointers[numRows]];
+            final double[] values = new double[rowPointers[numRows]];
+            for (int k = 0; k < columnIndices.length; k++) {
+                columnIndices[k] = in.readInt();
+                values[k] = in.readDouble();
+            }
+
+            final List<String> classLabels = new ArrayList<String>();
+            final int numClasses = in.readInt();
+            for (int c = 0; c < numClasses; c++) {
+                classLabels.add(in.readUTF());
+            }
+            final double[] distributions = new double[numRows * numClasses];
+            for (int i = 0; i < distributions.length; i++) {
+                distributions[i] = in.readDouble();
+            }
+
+            return new LabelPropagationState(fingerprint, numNeighbors, rowIndex, new CSRMatrix(numRows, numCols,
+                    rowPointers, columnIndices, values), classLabels, distributions);
+        }
+    }
+}
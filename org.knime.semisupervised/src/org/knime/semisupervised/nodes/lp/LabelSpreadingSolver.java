@@ -0,0 +1,322 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.lp;
+
+import java.util.BitSet;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Solves the fixed point of label propagation directly. With <code>P</code> the row normalized neighbor graph,
+ * <code>Y</code> the initial distributions and <code>D</code> the diagonal matrix which is <code>alpha</code> for
+ * labeled and <code>1</code> for unlabeled points, the fixed point <code>F</code> satisfies
+ *
+ * <pre>
+ * (I - D P) F = (I - D) Y
+ * </pre>
+ *
+ * The system is not symmetric, hence each class column is solved with the Jacobi preconditioned BiCGSTAB method, the
+ * columns in parallel. For <code>alpha = 0</code> the solution equals the limit of the iterative update. For
+ * <code>alpha > 0</code> labeled points are anchored at their initial labels instead of at the distribution of the
+ * previous iteration.
+ *
+ * @author agent
+ */
+class LabelSpreadingSolver {
+
+    private final double alpha;
+
+    private final int maxIterations;
+
+    private final double tolerance;
+
+    private int iterationsDone;
+
+    private double residual;
+
+    private volatile boolean canceled;
+
+    /**
+     * @param _alpha
+     * @param _maxIterations maximum number of iterations per class
+     * @param _tolerance stop as soon as the residual relative to the right hand side drops below this value
+     */
+    LabelSpreadingSolver(final double _alpha, final int _maxIterations, final double _tolerance) {
+        this.alpha = _alpha;
+        this.maxIterations = _maxIterations;
+        this.tolerance = _tolerance;
+    }
+
+    /**
+     * @return the largest number of iterations over all classes of the last {@link #solve}
+     */
+    int getIterationsDone() {
+        return iterationsDone;
+    }
+
+    /**
+     * @return the largest relative residual over all classes of the last {@link #solve}
+     */
+    double getResidual() {
+        return residual;
+    }
+
+    /**
+     * Solves the system for all classes. The current distributions of <code>dists</code> are the initial labels and
+     * the initial guess, they are replaced by the normalized solution.
+     *
+     * @param graph neighbor graph
+     * @param dists initial distributions
+     * @param labeled rows of the labeled points
+     * @param parallel engine to solve the classes on
+     * @param monitor
+     */
+    void solve(final CSRMatrix graph, final DistributionBuffer dists, final BitSet labeled,
+               final ParallelRange parallel, final ExecutionMonitor monitor) {
+        final int n = graph.numRows();
+        final int numClasses = dists.numClasses();
+
+        // diagonal of D
+        final double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = labeled.get(i) ? alpha : 1;
+        }
+
+        final int[] iterations = new int[numClasses];
+        final double[] residuals = new double[numClasses];
+        canceled = false;
+
+        parallel.forEach(numClasses, 1, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int c = from; c < to; c++) {
+                    solveClass(graph, d, dists, c, iterations, residuals, monitor);
+                }
+            }
+        });
+
+        iterationsDone = 0;
+        residual = 0;
+        for (int c = 0; c < numClasses; c++) {
+            iterationsDone = Math.max(iterationsDone, iterations[c]);
+            residual = Math.max(residual, residuals[c]);
+        }
+
+        normalize(dists);
+    }
+
+    private void solveClass(final CSRMatrix graph, final double[] d, final DistributionBuffer dists, final int c,
+                            final int[] iterations, final double[] residuals, final ExecutionMonitor monitor) {
+        final int n = graph.numRows();
+        final double[] current = dists.current();
+
+        // right hand side and initial guess
+        final double[] b = new double[n];
+        final double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            final double y = current[dists.offset(i) + c];
+            b[i] = (1 - d[i]) * y;
+            x[i] = y;
+        }
+
+        // inverse of the Jacobi preconditioner, i.e. of the diagonal of (I - D P)
+        final double[] invDiag = new double[n];
+        final int[] rowPointers = graph.rowPointers();
+        final int[] cols = graph.columnIndices();
+        final double[] weights = graph.values();
+        for (int i = 0; i < n; i++) {
+            double diag = 1;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                if (cols[k] == i) {
+                    diag -= d[i] * weights[k];
+                }
+            }
+            invDiag[i] = diag == 0 ? 1 : 1 / diag;
+        }
+
+        final double normB = Math.sqrt(dot(b, b));
+        if (normB == 0) {
+            // no labels of this class, hence the solution is zero
+            for (int i = 0; i < n; i++) {
+                current[dists.offset(i) + c] = 0;
+            }
+            return;
+        }
+
+        final double[] r = new double[n];
+        multiply(graph, d, x, r);
+        for (int i = 0; i < n; i++) {
+            r[i] = b[i] - r[i];
+        }
+        final double[] rHat = r.clone();
+        final double[] p = new double[n];
+        final double[] v = new double[n];
+        final double[] y = new double[n];
+        final double[] z = new double[n];
+        final double[] t = new double[n];
+
+        double rho = 1, alphaK = 1, omega = 1;
+        double res = Math.sqrt(dot(r, r)) / normB;
+        int iteration = 0;
+        while (res >= tolerance && iteration < maxIterations && !canceled) {
+            iteration++;
+
+            final double rhoNew = dot(rHat, r);
+            if (rhoNew == 0) {
+                // breakdown
+                break;
+            }
+            final double beta = (rhoNew / rho) * (alphaK / omega);
+            for (int i = 0; i < n; i++) {
+                p[i] = r[i] + beta * (p[i] - omega * v[i]);
+                y[i] = invDiag[i] * p[i];
+            }
+            multiply(graph, d, y, v);
+
+            final double rHatV = dot(rHat, v);
+            if (rHatV == 0) {
+                break;
+            }
+            alphaK = rhoNew / rHatV;
+
+            // x = x + alpha y, r becomes s = r - alpha v
+            for (int i = 0; i < n; i++) {
+                x[i] += alphaK * y[i];
+                r[i] -= alphaK * v[i];
+            }
+            res = Math.sqrt(dot(r, r)) / normB;
+            if (res < tolerance) {
+                break;
+            }
+
+            for (int i = 0; i < n; i++) {
+                z[i] = invDiag[i] * r[i];
+            }
+            multiply(graph, d, z, t);
+            final double tt = dot(t, t);
+            if (tt == 0) {
+                break;
+            }
+            omega = dot(t, r) / tt;
+
+            for (int i = 0; i < n; i++) {
+                x[i] += omega * z[i];
+                r[i] -= omega * t[i];
+            }
+            res = Math.sqrt(dot(r, r)) / normB;
+            rho = rhoNew;
+
+            if (omega == 0) {
+                break;
+            }
+
+            try {
+                monitor.checkCanceled();
+            } catch (CanceledExecutionException e) {
+                canceled = true;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            current[dists.offset(i) + c] = x[i];
+        }
+        iterations[c] = iteration;
+        residuals[c] = res;
+    }
+
+    /*
+     * res = (I - D P) x
+     */
+    private static void multiply(final CSRMatrix graph, final double[] d, final double[] x, final double[] res) {
+        final int[] rowPointers = graph.rowPointers();
+        final int[] cols = graph.columnIndices();
+        final double[] weights = graph.values();
+        for (int i = 0; i < graph.numRows(); i++) {
+            double sum = 0;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                sum += weights[k] * x[cols[k]];
+            }
+            res[i] = x[i] - d[i] * sum;
+        }
+    }
+
+    private static double dot(final double[] a, final double[] b) {
+        double res = 0;
+        for (int i = 0; i < a.length; i++) {
+            res += a[i] * b[i];
+        }
+        return res;
+    }
+
+    /*
+     * Clips negative round-off and normalizes each row to a distribution.
+     */
+    private static void normalize(final DistributionBuffer dists) {
+        final double[] current = dists.current();
+        final int numClasses = dists.numClasses();
+        for (int i = 0; i < dists.numPoints(); i++) {
+            final int offset = dists.offset(i);
+            double total = 0;
+            for (int c = offset; c < offset + numClasses; c++) {
+                current[c] = Math.max(0, current[c]);
+                total += current[c];
+            }
+            if (total != 0) {
+                for (int c = offset; c < offset + numClasses; c++) {
+                    current[c] /= total;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.ssakde;
+
+import java.util.Arrays;
+
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Exact density estimation of {@link SSAKDE} with the kernel matrix computed once. The matrix holds the response of
+ * every kernel at every point as floats, computed tile by tile such that the distance of each pair of points is
+ * computed only once. Each iteration is then the product of the matrix with the distributions of the kernels, blocked
+ * such that the distributions of a block of kernels stay in the cache while a block of points accumulates them.
+ *
+ * @author agent
+ */
+final class DenseKernelKDE {
+
+    /** number of points and kernels per tile of the matrix */
+    private static final int TILE_SIZE = 64;
+
+    /** share of the free heap the matrix may take */
+    private static final double MAX_HEAP_SHARE = 0.5;
+
+    private final int numPoints;
+
+    private final int numClasses;
+
+    /** response of kernel p at point t at position [t][p] */
+    private final float[][] matrix;
+
+    private DenseKernelKDE(final int _numClasses, final float[][] _matrix) {
+        this.numPoints = _matrix.length;
+        this.numClasses = _numClasses;
+        this.matrix = _matrix;
+    }
+
+    /**
+     * @param numPoints number of points
+     * @return <code>true</code> if the kernel matrix of the points likely fits into the free heap
+     */
+    static boolean fits(final int numPoints) {
+        final Runtime runtime = Runtime.getRuntime();
+        final long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return 4L * numPoints * numPoints <= MAX_HEAP_SHARE * free;
+    }
+
+    /**
+     * @param vectors feature vectors of the points, row-major
+     * @param dim dimension of the feature vectors
+     * @param kernels kernel of each point
+     * @param numClasses number of classes
+     * @param parallel engine to run on
+     * @return the engine, or <code>null</code> if the kernel matrix does not fit into the heap
+     */
+    static DenseKernelKDE create(final double[] vectors, final int dim, final GaussianKernels kernels,
+                                 final int numClasses, final ParallelRange parallel) {
+        final int n = kernels.size();
+        if (!fits(n)) {
+            return null;
+        }
+        final float[][] matrix;
+        try {
+            matrix = new float[n][n];
+        } catch (OutOfMemoryError e) {
+            // other executions took the memory in the meantime
+            return null;
+        }
+
+        // tile (i, j) with i <= j fills both the responses of the kernels of tile j at the points of tile i and the
+        // transposed ones
+        final int numTiles = (n + TILE_SIZE - 1) / TILE_SIZE;
+        parallel.forEach(numTiles, 1, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int i = from; i < to; i++) {
+                    final int tEnd = Math.min(n, (i + 1) * TILE_SIZE);
+                    for (int j = i; j < numTiles; j++) {
+                        final int pEnd = Math.min(n, (j + 1) * TILE_SIZE);
+                        for (int t = i * TILE_SIZE; t < tEnd; t++) {
+                            for (int p = Math.max(j * TILE_SIZE, t); p < pEnd; p++) {
+                                double squaredDistance = 0;
+                                for (int k = 0; k < dim; k++) {
+                                    final double diff = vectors[t * dim + k] - vectors[p * dim + k];
+                                    squaredDistance += diff * diff;
+                                }
+                                matrix[t][p] = (float)kernels.response(p, squaredDistance);
+                                matrix[p][t] = (float)kernels.response(t, squaredDistance);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        return new DenseKernelKDE(numClasses, matrix);
+    }
+
+    /**
+     * Estimates the class distribution of all points from the given distributions.
+     *
+     * @param current distributions, row-major by point
+     * @param next receives the normalized estimates, row-major by point. The estimate of a point whose density is zero
+     *            is its current distribution.
+     * @param parallel engine to run on
+     */
+    void estimate(final double[] current, final double[] next, final ParallelRange parallel) {
+        // a block of kernels: their distributions and the matrix rows of a block of points within the block
+        final int kernelBlock = ParallelRange.cacheSizedChunk(8 * numClasses + 4 * TILE_SIZE);
+        parallel.forEach(numPoints, TILE_SIZE, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int tStart = from; tStart < to; tStart += TILE_SIZE) {
+                    final int tEnd = Math.min(to, tStart + TILE_SIZE);
+                    Arrays.fill(next, tStart * numClasses, tEnd * numClasses, 0);
+                    for (int pStart = 0; pStart < numPoints; pStart += kernelBlock) {
+                        final int pEnd = Math.min(numPoints, pStart + kernelBlock);
+                        for (int t = tStart; t < tEnd; t++) {
+                            accumulate(matrix[t], pStart, pEnd, current, next, t * numClasses);
+                        }
+                    }
+                    for (int t = tStart; t < tEnd; t++) {
+                        normalize(current, next, t * numClasses);
+                    }
+                }
+            }
+        });
+    }
+
+    private void accumulate(final float[] responses, final int pStart, final int pEnd, final double[] current,
+                            final double[] next, final int out) {
+        if (numClasses == 2) {
+            // the common binary case without the inner loop
+            double sum0 = 0;
+            double sum1 = 0;
+            for (int p = pStart; p < pEnd; p++) {
+                final double response = responses[p];
+                sum0 += response * current[2 * p];
+                sum1 += response * current[2 * p + 1];
+            }
+            next[out] += sum0;
+            next[out + 1] += sum1;
+            return;
+        }
+        for (int p = pStart; p < pEnd; p++) {
+            final double response = responses[p];
+            final int offset = p * numClasses;
+            for (int c = 0; c < numClasses; c++) {
+                next[out + c] += response * current[offset + c];
+            }
+        }
+    }
+
+    private void normalize(final double[] current, final double[] next, final int offset) {
+        double total = 0;
+        for (int c = 0; c < numClasses; c++) {
+            total += next[offset + c];
+        }
+        if (total == 0) {
+            System.arraycopy(current, offset, next, offset, numClasses);
+            return;
+        }
+        for (int c = 0; c < numClasses; c++) {
+            next[offset + c] /= total;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.ssakde;
+
+import java.util.Arrays;
+
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Approximate density estimation of {@link SSAKDE} with a relative error bound. All points are the kernels as well as
+ * the test points, they are organized in one kd-tree whose nodes know their bounding box, the range of bandwidths of
+ * their kernels and, per iteration, the probability mass of each class.
+ *
+ * The leaves of the tree are the query nodes, each traverses the tree from the root, the closer child first. The
+ * kernels of a reference node are replaced by the mean of the smallest and the largest response they can have anywhere
+ * within the query leaf whenever the error of doing so stays within its share
+ * <code>epsilon * mass(node) / mass(all)</code> of a lower bound of the density at the query points. The lower bound
+ * is tightened while the traversal descends. Hence the estimated density of each point is within a relative error of
+ * <code>epsilon</code>, each normalized class probability within about <code>2 * epsilon</code>. The same traversal
+ * serves all classes.
+ *
+ * @author agent
+ */
+final class DualTreeKDE {
+
+    /** maximum number of points per leaf */
+    private static final int LEAF_SIZE = 32;
+
+    private final int numPoints;
+
+    private final int dim;
+
+    private final int numClasses;
+
+    private final double epsilon;
+
+    /** original index of the point at each position of the tree order */
+    private final int[] order;
+
+    /** coordinates in tree order, row-major */
+    private final double[] coords;
+
+    private final double[] peaks;
+
+    private final double[] gammas;
+
+    private int numNodes;
+
+    private final int[] begin;
+
+    private final int[] end;
+
+    /** left child of each node, -1 for leaves. nodes are numbered in depth first order */
+    private final int[] left;
+
+    private final int[] right;
+
+    private final double[] lower;
+
+    private final double[] upper;
+
+    private final double[] peakMin;
+
+    private final double[] peakMax;
+
+    private final double[] gammaMin;
+
+    private final double[] gammaMax;
+
+    private final int[] leaves;
+
+    /**
+     * @param vectors feature vectors of the points, row-major
+     * @param _dim dimension of the feature vectors
+     * @param kernels kernel of each point
+     * @param _numClasses number of classes
+     * @param _epsilon relative error bound of the estimated densities
+     */
+    DualTreeKDE(final double[] vectors, final int _dim, final GaussianKernels kernels, final int _numClasses,
+                final double _epsilon) {
+        this.numPoints = kernels.size();
+        this.dim = _dim;
+        this.numClasses = _numClasses;
+        this.epsilon = _epsilon;
+
+        // the children of a split hold at least half a leaf each
+        final int capacity = 4 * (numPoints / LEAF_SIZE + 1);
+        begin = new int[capacity];
+        end = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        lower = new double[capacity * dim];
+        upper = new double[capacity * dim];
+        peakMin = new double[capacity];
+        peakMax = new double[capacity];
+        gammaMin = new double[capacity];
+        gammaMax = new double[capacity];
+
+        order = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            order[i] = i;
+        }
+        build(vectors, kernels, 0, numPoints);
+
+        coords = new double[numPoints * dim];
+        peaks = new double[numPoints];
+        gammas = new double[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            System.arraycopy(vectors, order[i] * dim, coords, i * dim, dim);
+            peaks[i] = kernels.peak(order[i]);
+            gammas[i] = kernels.gamma(order[i]);
+        }
+
+        int numLeaves = 0;
+        for (int node = 0; node < numNodes; node++) {
+            if (left[node] < 0) {
+                numLeaves++;
+            }
+        }
+        leaves = new int[numLeaves];
+        for (int node = 0, l = 0; node < numNodes; node++) {
+            if (left[node] < 0) {
+                leaves[l++] = node;
+            }
+        }
+    }
+
+    private int build(final double[] vectors, final GaussianKernels kernels, final int from, final int to) {
+        final int node = numNodes++;
+        begin[node] = from;
+        end[node] = to;
+
+        final int box = node * dim;
+        Arrays.fill(lower, box, box + dim, Double.POSITIVE_INFINITY);
+        Arrays.fill(upper, box, box + dim, Double.NEGATIVE_INFINITY);
+        peakMin[node] = Double.POSITIVE_INFINITY;
+        peakMax[node] = Double.NEGATIVE_INFINITY;
+        gammaMin[node] = Double.POSITIVE_INFINITY;
+        gammaMax[node] = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            final int p = order[i];
+            for (int k = 0; k < dim; k++) {
+                final double v = vectors[p * dim + k];
+                lower[box + k] = Math.min(lower[box + k], v);
+                upper[box + k] = Math.max(upper[box + k], v);
+            }
+            peakMin[node] = Math.min(peakMin[node], kernels.peak(p));
+            peakMax[node] = Math.max(peakMax[node], kernels.peak(p));
+            gammaMin[node] = Math.min(gammaMin[node], kernels.gamma(p));
+            gammaMax[node] = Math.max(gammaMax[node], kernels.gamma(p));
+        }
+
+        // split the widest dimension at the median
+        int splitDim = 0;
+        for (int k = 1; k < dim; k++) {
+            if (upper[box + k] - lower[box + k] > upper[box + splitDim] - lower[box + splitDim]) {
+                splitDim = k;
+            }
+        }
+        if (to - from <= LEAF_SIZE || upper[box + splitDim] <= lower[box + splitDim]) {
+            left[node] = -1;
+            right[node] = -1;
+            return node;
+        }
+
+        final int mid = (from + to) >>> 1;
+        select(vectors, from, to, mid, splitDim);
+        left[node] = build(vectors, kernels, from, mid);
+        right[node] = build(vectors, kernels, mid, to);
+        return node;
+    }
+
+    /*
+     * Reorders the points from (inclusive) to to (exclusive) such that the point at position k has its final position
+     * according to the given dimension.
+     */
+    private void select(final double[] vectors, final int from, final int to, final int k, final int splitDim) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            final double pivot = vectors[order[(lo + hi) >>> 1] * dim + splitDim];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (vectors[order[i] * dim + splitDim] < pivot) {
+                    i++;
+                }
+                while (vectors[order[j] * dim + splitDim] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Estimates the class distribution of all points from the given distributions.
+     *
+     * @param current distributions of the kernels, row-major by point
+     * @param next receives the normalized estimates, row-major by point. The estimate of a point whose density is zero
+     *            is its current distribution.
+     * @param parallel engine to run the query leaves on
+     */
+    void estimate(final double[] current, final double[] next, final ParallelRange parallel) {
+        // class distributions in tree order and the class masses of all nodes
+        final double[] dists = new double[numPoints * numClasses];
+        for (int i = 0; i < numPoints; i++) {
+            System.arraycopy(current, order[i] * numClasses, dists, i * numClasses, numClasses);
+        }
+        final double[] masses = new double[numNodes * numClasses];
+        final double[] nodeMasses = new double[numNodes];
+        for (int node = numNodes - 1; node >= 0; node--) {
+            final int offset = node * numClasses;
+            if (left[node] < 0) {
+                for (int i = begin[node]; i < end[node]; i++) {
+                    for (int c = 0; c < numClasses; c++) {
+                        masses[offset + c] += dists[i * numClasses + c];
+                    }
+                }
+            } else {
+                for (int c = 0; c < numClasses; c++) {
+                    masses[offset + c] = masses[left[node] * numClasses + c] + masses[right[node] * numClasses + c];
+                }
+            }
+            for (int c = 0; c < numClasses; c++) {
+                nodeMasses[node] += masses[offset + c];
+            }
+        }
+
+        parallel.forEach(leaves.length, 1, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                final int[] stack = new int[numNodes];
+                final double[] nodeSums = new double[numClasses];
+                for (int l = from; l < to; l++) {
+                    query(leaves[l], dists, masses, nodeMasses, stack, nodeSums, current, next);
+                }
+            }
+        });
+    }
+
+    private void query(final int q, final double[] dists, final double[] masses, final double[] nodeMasses,
+                       final int[] stack, final double[] nodeSums, final double[] current, final double[] next) {
+        final int qBegin = begin[q];
+        final int qEnd = end[q];
+        final double[] pointSums = new double[(qEnd - qBegin) * numClasses];
+        Arrays.fill(nodeSums, 0);
+
+        // lower bound of the density at any point of the leaf: the response of the point's own kernel or the sum of
+        // the smallest responses of all nodes the traversal has reached so far
+        double selfBound = Double.POSITIVE_INFINITY;
+        for (int t = qBegin; t < qEnd; t++) {
+            double mass = 0;
+            for (int c = 0; c < numClasses; c++) {
+                mass += dists[t * numClasses + c];
+            }
+            selfBound = Math.min(selfBound, peaks[t] * mass);
+        }
+        final double totalMass = nodeMasses[0];
+        double traversalBound = nodeMasses[0] * minResponse(q, 0);
+
+        int size = 0;
+        stack[size++] = 0;
+        while (size > 0) {
+            final int r = stack[--size];
+            if (nodeMasses[r] == 0) {
+                continue;
+            }
+            final double kHi = peakMax[r] * Math.exp(-gammaMin[r] * minSquaredDistance(q, r));
+            final double kLo = minResponse(q, r);
+            final double threshold = 2 * epsilon * Math.max(selfBound, traversalBound) / totalMass;
+            if (kHi - kLo <= threshold) {
+                final double mid = 0.5 * (kHi + kLo);
+                for (int c = 0; c < numClasses; c++) {
+                    nodeSums[c] += mid * masses[r * numClasses + c];
+                }
+            } else if (left[r] < 0) {
+                double exactBound = Double.POSITIVE_INFINITY;
+                for (int t = qBegin; t < qEnd; t++) {
+                    final int sumOffset = (t - qBegin) * numClasses;
+                    double density = 0;
+                    for (int p = begin[r]; p < end[r]; p++) {
+                        double sqDist = 0;
+                        for (int k = 0; k < dim; k++) {
+                            final double diff = coords[t * dim + k] - coords[p * dim + k];
+                            sqDist += diff * diff;
+                        }
+                        final double response = peaks[p] * Math.exp(-gammas[p] * sqDist);
+                        for (int c = 0; c < numClasses; c++) {
+                            final double weighted = response * dists[p * numClasses + c];
+                            pointSums[sumOffset + c] += weighted;
+                            density += weighted;
+                        }
+                    }
+                    exactBound = Math.min(exactBound, density);
+                }
+                traversalBound += Math.max(0, exactBound - kLo * nodeMasses[r]);
+            } else {
+                final int l = left[r];
+                final int rr = right[r];
+                final double kLoLeft = minResponse(q, l);
+                final double kLoRight = minResponse(q, rr);
+                traversalBound +=
+                        Math.max(0, kLoLeft * nodeMasses[l] + kLoRight * nodeMasses[rr] - kLo * nodeMasses[r]);
+                // the closer child is visited first
+                if (minSquaredDistance(q, l) <= minSquaredDistance(q, rr)) {
+                    stack[size++] = rr;
+                    stack[size++] = l;
+                } else {
+                    stack[size++] = l;
+                    stack[size++] = rr;
+                }
+            }
+        }
+
+        for (int t = qBegin; t < qEnd; t++) {
+            final int sumOffset = (t - qBegin) * numClasses;
+            final int offset = order[t] * numClasses;
+            double total = 0;
+            for (int c = 0; c < numClasses; c++) {
+                pointSums[sumOffset + c] += nodeSums[c];
+                total += pointSums[sumOffset + c];
+            }
+            if (total == 0) {
+                System.arraycopy(current, offset, next, offset, numClasses);
+                continue;
+            }
+            for (int c = 0; c < numClasses; c++) {
+                next[offset + c] = pointSums[sumOffset + c] / total;
+            }
+        }
+    }
+
+    /*
+     * Smallest response of any kernel of node r at any point of node q.
+     */
+    private double minResponse(final int q, final int r) {
+        return peakMin[r] * Math.exp(-gammaMax[r] * maxSquaredDistance(q, r));
+    }
+
+    private double minSquaredDistance(final int a, final int b) {
+        double res = 0;
+        for (int k = 0; k < dim; k++) {
+            final double gap =
+                    Math.max(0, Math.max(lower[a * dim + k] - upper[b * dim + k], lower[b * dim + k]
+                            - upper[a * dim + k]));
+            res += gap * gap;
+        }
+        return res;
+    }
+
+    private double maxSquaredDistance(final int a, final int b) {
+        double res = 0;
+        for (int k = 0; k < dim; k++) {
+            final double span =
+                    Math.max(upper[a * dim + k] - lower[b * dim + k], upper[b * dim + k] - lower[a * dim + k]);
+            res += span * span;
+        }
+        return res;
+    }
+}
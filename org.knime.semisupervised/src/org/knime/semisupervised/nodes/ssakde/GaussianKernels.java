@@ -0,0 +1,123 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.ssakde;
+
+import org.knime.paruni.Utils;
+
+/**
+ * The Gaussian kernels of all points in closed form <code>peak * exp(-gamma * d^2)</code> of the squared distance
+ * <code>d^2</code>. Both parameters of each kernel are probed once from {@link Utils#gaussRespone}, hence the kernels
+ * stay consistent with its normalization while the density engines can evaluate and bound them without calling it.
+ *
+ * @author agent
+ */
+final class GaussianKernels {
+
+    private final double[] peaks;
+
+    private final double[] gammas;
+
+    private GaussianKernels(final double[] _peaks, final double[] _gammas) {
+        this.peaks = _peaks;
+        this.gammas = _gammas;
+    }
+
+    /**
+     * @param sigmas bandwidth of each kernel
+     * @param dim dimension of the feature space
+     * @return the kernels
+     */
+    static GaussianKernels probe(final double[] sigmas, final int dim) {
+        final double[] origin = new double[dim];
+        final double[] probe = new double[dim];
+        final double[] peaks = new double[sigmas.length];
+        final double[] gammas = new double[sigmas.length];
+        for (int p = 0; p < sigmas.length; p++) {
+            final double sigma = sigmas[p];
+            // the response at distance sigma determines the decay
+            probe[0] = sigma;
+            peaks[p] = Utils.gaussRespone(origin, origin, sigma);
+            gammas[p] = -Math.log(Utils.gaussRespone(origin, probe, sigma) / peaks[p]) / (sigma * sigma);
+        }
+        return new GaussianKernels(peaks, gammas);
+    }
+
+    /**
+     * @return number of kernels
+     */
+    int size() {
+        return peaks.length;
+    }
+
+    /**
+     * @param p a kernel
+     * @return response of the kernel at its center
+     */
+    double peak(final int p) {
+        return peaks[p];
+    }
+
+    /**
+     * @param p a kernel
+     * @return decay of the kernel per squared distance
+     */
+    double gamma(final int p) {
+        return gammas[p];
+    }
+
+    /**
+     * @param p a kernel
+     * @param squaredDistance squared distance to the center of the kernel
+     * @return response of the kernel
+     */
+    double response(final int p, final double squaredDistance) {
+        return peaks[p] * Math.exp(-gammas[p] * squaredDistance);
+    }
+}
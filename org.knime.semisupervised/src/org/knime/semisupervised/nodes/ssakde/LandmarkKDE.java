@@ -0,0 +1,361 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.ssakde;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.knime.base.util.kdtree.KDTree;
+import org.knime.base.util.kdtree.KDTreeBuilder;
+import org.knime.base.util.kdtree.NearestNeighbour;
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Approximate density estimation of {@link SSAKDE} with a subset of the points, the landmarks, as the only kernels.
+ * All labeled points are landmarks, the others are drawn at random or by k-means++ seeding. Each landmark stands for
+ * the points closest to it, hence its kernel is weighted by the size of its cell. The iterations only update the
+ * landmarks, which costs <code>O(m^2 * C)</code> instead of <code>O(n^2 * C)</code>. All other points get their
+ * distribution once at the end from their nearest landmarks, see {@link #interpolate(double[], ParallelRange)}.
+ *
+ * @author agent
+ */
+final class LandmarkKDE {
+
+    /** number of nearest landmarks each other point is estimated from */
+    private static final int INTERPOLATION_NEIGHBORS = 32;
+
+    /** the landmark kernel matrix is cached up to this size, otherwise it is recomputed in every iteration */
+    private static final long MATRIX_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private final int numPoints;
+
+    private final int dim;
+
+    private final int numClasses;
+
+    private final double[] vectors;
+
+    private final GaussianKernels kernels;
+
+    /** point of each landmark */
+    private final int[] landmarks;
+
+    /** whether a point is a landmark */
+    private final boolean[] isLandmark;
+
+    /** size of the cell of each landmark */
+    private final double[] weights;
+
+    /** weighted response of landmark l at landmark j at position j * m + l, or null if too large */
+    private final double[] matrix;
+
+    private final KDTree<Integer> tree;
+
+    /**
+     * @param _vectors feature vectors of the points, row-major
+     * @param _dim dimension of the feature vectors
+     * @param _kernels kernel of each point
+     * @param labeled the labeled points, which are always landmarks
+     * @param _numClasses number of classes
+     * @param numLandmarks number of landmarks
+     * @param kMeansSeeding draw the landmarks by k-means++ seeding instead of uniformly at random
+     * @param seed seed of the landmark selection
+     * @param parallel engine to run on
+     */
+    LandmarkKDE(final double[] _vectors, final int _dim, final GaussianKernels _kernels, final int[] labeled,
+                final int _numClasses, final int numLandmarks, final boolean kMeansSeeding, final long seed,
+                final ParallelRange parallel) {
+        this.numPoints = _kernels.size();
+        this.dim = _dim;
+        this.numClasses = _numClasses;
+        this.vectors = _vectors;
+        this.kernels = _kernels;
+
+        isLandmark = new boolean[numPoints];
+        for (final int p : labeled) {
+            isLandmark[p] = true;
+        }
+        final int m = Math.min(numPoints, Math.max(numLandmarks, labeled.length));
+        landmarks = Arrays.copyOf(labeled, m);
+        if (kMeansSeeding) {
+            seedKMeans(labeled.length, new Random(seed), parallel);
+        } else {
+            drawUniformly(labeled.length, new Random(seed));
+        }
+
+        final KDTreeBuilder<Integer> builder = new KDTreeBuilder<Integer>(dim);
+        for (int l = 0; l < m; l++) {
+            builder.addPattern(vector(landmarks[l]), l);
+        }
+        tree = builder.buildTree();
+
+        // cell sizes: each point counts for its nearest landmark
+        final int[] nearest = new int[numPoints];
+        parallel.forEach(numPoints, ParallelRange.cacheSizedChunk(8 * dim), new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int p = from; p < to; p++) {
+                    nearest[p] = isLandmark[p] ? -1 : tree.getKNearestNeighbours(vector(p), 1).get(0).getData();
+                }
+            }
+        });
+        weights = new double[m];
+        Arrays.fill(weights, 1);
+        for (int p = 0; p < numPoints; p++) {
+            if (nearest[p] >= 0) {
+                weights[nearest[p]]++;
+            }
+        }
+
+        if ((long)m * m * 8 <= MATRIX_CACHE_BYTES) {
+            matrix = new double[m * m];
+            parallel.forEach(m, 1, new ParallelRange.Body() {
+                @Override
+                public void apply(final int from, final int to) {
+                    for (int j = from; j < to; j++) {
+                        for (int l = 0; l < m; l++) {
+                            matrix[j * m + l] = weightedResponse(l, landmarks[j]);
+                        }
+                    }
+                }
+            });
+        } else {
+            matrix = null;
+        }
+    }
+
+    private void drawUniformly(final int numFixed, final Random random) {
+        // partial Fisher-Yates shuffle of the points which are no landmarks yet
+        final int[] candidates = new int[numPoints - numFixed];
+        for (int p = 0, i = 0; p < numPoints; p++) {
+            if (!isLandmark[p]) {
+                candidates[i++] = p;
+            }
+        }
+        for (int l = numFixed; l < landmarks.length; l++) {
+            final int i = l - numFixed + random.nextInt(candidates.length - (l - numFixed));
+            final int p = candidates[i];
+            candidates[i] = candidates[l - numFixed];
+            candidates[l - numFixed] = p;
+            landmarks[l] = p;
+            isLandmark[p] = true;
+        }
+    }
+
+    private void seedKMeans(final int numFixed, final Random random, final ParallelRange parallel) {
+        // squared distance of each point to its closest landmark so far
+        final double[] closest = new double[numPoints];
+        Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        int l = numFixed;
+        if (numFixed == 0 && landmarks.length > 0) {
+            landmarks[0] = random.nextInt(numPoints);
+            isLandmark[landmarks[0]] = true;
+            l = 1;
+        }
+        updateClosest(closest, 0, l, parallel);
+
+        for (; l < landmarks.length; l++) {
+            // draw proportional to the squared distance, summed in a fixed order
+            double total = 0;
+            for (int p = 0; p < numPoints; p++) {
+                total += closest[p];
+            }
+            double threshold = random.nextDouble() * total;
+            int next = -1;
+            for (int p = 0; p < numPoints; p++) {
+                if (!isLandmark[p]) {
+                    next = p;
+                    threshold -= closest[p];
+                    if (threshold < 0) {
+                        break;
+                    }
+                }
+            }
+            landmarks[l] = next;
+            isLandmark[next] = true;
+            updateClosest(closest, l, l + 1, parallel);
+        }
+    }
+
+    private void updateClosest(final double[] closest, final int fromLandmark, final int toLandmark,
+                               final ParallelRange parallel) {
+        parallel.forEach(numPoints, ParallelRange.cacheSizedChunk(8 * dim), new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int p = from; p < to; p++) {
+                    if (isLandmark[p]) {
+                        closest[p] = 0;
+                        continue;
+                    }
+                    for (int l = fromLandmark; l < toLandmark; l++) {
+                        closest[p] = Math.min(closest[p], squaredDistance(p, landmarks[l]));
+                    }
+                }
+            }
+        });
+    }
+
+    private double[] vector(final int p) {
+        return Arrays.copyOfRange(vectors, p * dim, (p + 1) * dim);
+    }
+
+    private double squaredDistance(final int a, final int b) {
+        double res = 0;
+        for (int k = 0; k < dim; k++) {
+            final double diff = vectors[a * dim + k] - vectors[b * dim + k];
+            res += diff * diff;
+        }
+        return res;
+    }
+
+    private double weightedResponse(final int landmark, final int p) {
+        return weights[landmark] * kernels.response(landmarks[landmark], squaredDistance(landmarks[landmark], p));
+    }
+
+    /**
+     * @return number of landmarks
+     */
+    int numLandmarks() {
+        return landmarks.length;
+    }
+
+    /**
+     * Estimates the class distribution of the landmarks from their given distributions, all other points keep their
+     * current distribution.
+     *
+     * @param current distributions, row-major by point
+     * @param next receives the normalized estimates, row-major by point. The estimate of a landmark whose density is
+     *            zero is its current distribution.
+     * @param parallel engine to run on
+     */
+    void estimate(final double[] current, final double[] next, final ParallelRange parallel) {
+        final int m = landmarks.length;
+        System.arraycopy(current, 0, next, 0, current.length);
+        parallel.forEach(m, 1, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int j = from; j < to; j++) {
+                    final int out = landmarks[j] * numClasses;
+                    Arrays.fill(next, out, out + numClasses, 0);
+                    double total = 0;
+                    for (int l = 0; l < m; l++) {
+                        final double response =
+                                matrix == null ? weightedResponse(l, landmarks[j]) : matrix[j * m + l];
+                        final int offset = landmarks[l] * numClasses;
+                        for (int c = 0; c < numClasses; c++) {
+                            final double weighted = response * current[offset + c];
+                            next[out + c] += weighted;
+                            total += weighted;
+                        }
+                    }
+                    normalize(current, next, out, total);
+                }
+            }
+        });
+    }
+
+    /**
+     * Estimates the distribution of all points which are no landmarks from the distributions of their nearest
+     * landmarks.
+     *
+     * @param dists distributions, row-major by point. Only the rows of points which are no landmarks are replaced.
+     * @param parallel engine to run on
+     */
+    void interpolate(final double[] dists, final ParallelRange parallel) {
+        final int s = Math.min(INTERPOLATION_NEIGHBORS, landmarks.length);
+        parallel.forEach(numPoints, ParallelRange.cacheSizedChunk(8 * dim * s), new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                final double[] sums = new double[numClasses];
+                for (int t = from; t < to; t++) {
+                    if (isLandmark[t]) {
+                        continue;
+                    }
+                    Arrays.fill(sums, 0);
+                    double total = 0;
+                    int closest = -1;
+                    for (final NearestNeighbour<Integer> nn : tree.getKNearestNeighbours(vector(t), s)) {
+                        final int l = nn.getData();
+                        if (closest < 0) {
+                            closest = landmarks[l];
+                        }
+                        final double response = weightedResponse(l, t);
+                        final int offset = landmarks[l] * numClasses;
+                        for (int c = 0; c < numClasses; c++) {
+                            final double weighted = response * dists[offset + c];
+                            sums[c] += weighted;
+                            total += weighted;
+                        }
+                    }
+
+                    final int out = t * numClasses;
+                    if (total == 0) {
+                        // no kernel reaches the point, it takes the distribution of its closest landmark
+                        System.arraycopy(dists, closest * numClasses, dists, out, numClasses);
+                        continue;
+                    }
+                    for (int c = 0; c < numClasses; c++) {
+                        dists[out + c] = sums[c] / total;
+                    }
+                }
+            }
+        });
+    }
+
+    private void normalize(final double[] current, final double[] next, final int offset, final double total) {
+        if (total == 0) {
+            System.arraycopy(current, offset, next, offset, numClasses);
+            return;
+        }
+        for (int c = 0; c < numClasses; c++) {
+            next[offset + c] /= total;
+        }
+    }
+}
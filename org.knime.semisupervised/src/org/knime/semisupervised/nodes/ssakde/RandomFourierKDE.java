@@ -0,0 +1,282 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.nodes.ssakde;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.knime.semisupervised.util.ParallelRange;
+
+/**
+ * Approximate density estimation of {@link SSAKDE} with random Fourier features. A Gaussian kernel
+ * <code>exp(-gamma * |x - y|^2)</code> is the expected value of <code>z(x) * z(y)</code> with the features
+ * <code>z_d(x) = sqrt(2 / D) * cos(w_d * x + b_d)</code>, <code>w_d ~ N(0, 2 * gamma)</code> and
+ * <code>b_d ~ U(0, 2 pi)</code>. The density of a class at a test point hence is the dot product of its features with
+ * the feature sum of the kernels weighted by their class probabilities, which costs <code>O(n * D * C)</code> per
+ * iteration instead of <code>O(n^2 * C)</code>. The error of a kernel value decreases with
+ * <code>1 / sqrt(D)</code>.
+ *
+ * Adaptive bandwidths are handled by sorting the kernels into buckets of similar bandwidth, each bucket has its own
+ * features for the geometric mean of the bandwidths in it. Negative density estimates are clamped to zero.
+ *
+ * @author agent
+ */
+final class RandomFourierKDE {
+
+    /** features are cached as floats up to this size, otherwise they are recomputed in every iteration */
+    private static final long FEATURE_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /** number of points per block of the feature sums */
+    private static final int BLOCK_SIZE = 4096;
+
+    private final int numPoints;
+
+    private final int dim;
+
+    private final int numClasses;
+
+    private final int numFeatures;
+
+    private final int numBuckets;
+
+    private final double[] vectors;
+
+    private final double[] peaks;
+
+    /** bucket of each kernel */
+    private final int[] buckets;
+
+    /** frequencies, row-major by bucket and feature */
+    private final double[] frequencies;
+
+    /** phases, row-major by bucket and feature */
+    private final double[] phases;
+
+    private final double scale;
+
+    /** features of all points for all buckets, row-major by point, or null if too large */
+    private final float[] cache;
+
+    /**
+     * @param _vectors feature vectors of the points, row-major
+     * @param _dim dimension of the feature vectors
+     * @param kernels kernel of each point
+     * @param _numClasses number of classes
+     * @param _numFeatures number of random features per bucket
+     * @param _numBuckets number of bandwidth buckets
+     * @param seed seed of the random features
+     * @param parallel engine to compute the features on
+     */
+    RandomFourierKDE(final double[] _vectors, final int _dim, final GaussianKernels kernels, final int _numClasses,
+                     final int _numFeatures, final int _numBuckets, final long seed, final ParallelRange parallel) {
+        this.numPoints = kernels.size();
+        this.dim = _dim;
+        this.numClasses = _numClasses;
+        this.numFeatures = _numFeatures;
+        this.numBuckets = Math.max(1, Math.min(_numBuckets, numPoints));
+        this.vectors = _vectors;
+        this.scale = Math.sqrt(2.0 / numFeatures);
+
+        peaks = new double[numPoints];
+        final Integer[] byGamma = new Integer[numPoints];
+        for (int p = 0; p < numPoints; p++) {
+            peaks[p] = kernels.peak(p);
+            byGamma[p] = p;
+        }
+
+        // buckets of equal size by bandwidth, each represented by the geometric mean of its gammas
+        Arrays.sort(byGamma, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(kernels.gamma(a), kernels.gamma(b));
+            }
+        });
+        buckets = new int[numPoints];
+        final double[] gammas = new double[numBuckets];
+        for (int b = 0; b < numBuckets; b++) {
+            final int from = (int)((long)b * numPoints / numBuckets);
+            final int to = (int)((long)(b + 1) * numPoints / numBuckets);
+            double logSum = 0;
+            for (int i = from; i < to; i++) {
+                buckets[byGamma[i]] = b;
+                logSum += Math.log(kernels.gamma(byGamma[i]));
+            }
+            gammas[b] = Math.exp(logSum / (to - from));
+        }
+
+        final Random random = new Random(seed);
+        frequencies = new double[numBuckets * numFeatures * dim];
+        phases = new double[numBuckets * numFeatures];
+        for (int b = 0; b < numBuckets; b++) {
+            final double std = Math.sqrt(2 * gammas[b]);
+            for (int d = 0; d < numFeatures; d++) {
+                final int f = b * numFeatures + d;
+                for (int k = 0; k < dim; k++) {
+                    frequencies[f * dim + k] = std * random.nextGaussian();
+                }
+                phases[f] = 2 * Math.PI * random.nextDouble();
+            }
+        }
+
+        final int rowLength = numBuckets * numFeatures;
+        if ((long)numPoints * rowLength * 4 <= FEATURE_CACHE_BYTES) {
+            cache = new float[numPoints * rowLength];
+            parallel.forEach(numPoints, ParallelRange.cacheSizedChunk(rowLength * 4), new ParallelRange.Body() {
+                @Override
+                public void apply(final int from, final int to) {
+                    final double[] row = new double[rowLength];
+                    for (int p = from; p < to; p++) {
+                        computeFeatures(p, row);
+                        for (int f = 0; f < rowLength; f++) {
+                            cache[p * rowLength + f] = (float)row[f];
+                        }
+                    }
+                }
+            });
+        } else {
+            cache = null;
+        }
+    }
+
+    /*
+     * Features of all buckets at a point.
+     */
+    private void computeFeatures(final int p, final double[] row) {
+        for (int f = 0; f < row.length; f++) {
+            double arg = phases[f];
+            for (int k = 0; k < dim; k++) {
+                arg += frequencies[f * dim + k] * vectors[p * dim + k];
+            }
+            row[f] = scale * Math.cos(arg);
+        }
+    }
+
+    private void features(final int p, final double[] row) {
+        if (cache == null) {
+            computeFeatures(p, row);
+        } else {
+            for (int f = 0; f < row.length; f++) {
+                row[f] = cache[p * row.length + f];
+            }
+        }
+    }
+
+    /**
+     * Estimates the class distribution of all points from the given distributions.
+     *
+     * @param current distributions of the kernels, row-major by point
+     * @param next receives the normalized estimates, row-major by point. The estimate of a point whose density is not
+     *            positive is its current distribution.
+     * @param parallel engine to run on
+     */
+    void estimate(final double[] current, final double[] next, final ParallelRange parallel) {
+        final int rowLength = numBuckets * numFeatures;
+        final int sumLength = rowLength * numClasses;
+
+        // feature sums of the kernels per class, first per block of points and then added up in block order
+        final int numBlocks = (numPoints + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final double[] blockSums = new double[numBlocks * sumLength];
+        parallel.forEach(numBlocks, 1, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                final double[] row = new double[rowLength];
+                for (int block = from; block < to; block++) {
+                    final int sums = block * sumLength;
+                    for (int p = block * BLOCK_SIZE; p < Math.min(numPoints, (block + 1) * BLOCK_SIZE); p++) {
+                        features(p, row);
+                        for (int d = buckets[p] * numFeatures; d < (buckets[p] + 1) * numFeatures; d++) {
+                            final double weight = peaks[p] * row[d];
+                            for (int c = 0; c < numClasses; c++) {
+                                blockSums[sums + d * numClasses + c] += weight * current[p * numClasses + c];
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        final double[] sums = new double[sumLength];
+        for (int block = 0; block < numBlocks; block++) {
+            for (int i = 0; i < sumLength; i++) {
+                sums[i] += blockSums[block * sumLength + i];
+            }
+        }
+
+        parallel.forEach(numPoints, ParallelRange.cacheSizedChunk(rowLength * 8), new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                final double[] row = new double[rowLength];
+                for (int t = from; t < to; t++) {
+                    features(t, row);
+                    final int out = t * numClasses;
+                    Arrays.fill(next, out, out + numClasses, 0);
+                    for (int d = 0; d < rowLength; d++) {
+                        for (int c = 0; c < numClasses; c++) {
+                            next[out + c] += row[d] * sums[d * numClasses + c];
+                        }
+                    }
+
+                    double total = 0;
+                    for (int c = 0; c < numClasses; c++) {
+                        next[out + c] = Math.max(0, next[out + c]);
+                        total += next[out + c];
+                    }
+                    if (total <= 0) {
+                        System.arraycopy(current, out, next, out, numClasses);
+                        continue;
+                    }
+                    for (int c = 0; c < numClasses; c++) {
+                        next[out + c] /= total;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -49,21 +49,18 @@
  */
 package org.knime.semisupervised.nodes.ssakde;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 import org.knime.base.util.kdtree.KDTree;
 import org.knime.base.util.kdtree.NearestNeighbour;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
-import org.knime.core.util.ThreadPool;
-import org.knime.paruni.DataPoint;
-import org.knime.paruni.Utils;
+import org.knime.semisupervised.util.CSRMatrix;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.LabelPartition;
+import org.knime.semisupervised.util.Labeled;
+import org.knime.semisupervised.util.ParallelRange;
 
 /**
  *
@@ -71,6 +68,74 @@ import org.knime.paruni.Utils;
  */
 public class SSAKDE {
 
+    /**
+     * How the densities of each iteration are estimated.
+     */
+    public enum DensityEngine implements Labeled {
+        /** sum the kernels of all points */
+        EXACT("Exact"),
+        /**
+         * sum the kernels of all points from the kernel matrix computed once, {@link #EXACT} if the matrix does not
+         * fit into the heap
+         */
+        KERNEL_MATRIX("Exact (precomputed kernel matrix)"),
+        /** sum only the kernels within a multiple of their bandwidth, see {@link SSAKDE#setTruncationRadius(double)} */
+        TRUNCATED("Truncated kernels"),
+        /** approximate the sums within a relative error, see {@link SSAKDE#setApproximationError(double)} */
+        DUAL_TREE("Dual-tree approximation"),
+        /** approximate the kernels by random Fourier features, see {@link SSAKDE#setRandomFeatures(int, int)} */
+        RANDOM_FEATURES("Random Fourier features"),
+        /** use a subset of the points as kernels, see {@link SSAKDE#setLandmarks(int, LandmarkSelection)} */
+        LANDMARKS("Landmarks (Nystroem)");
+
+        private final String label;
+
+        private DensityEngine(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * How the landmarks of {@link DensityEngine#LANDMARKS} are chosen.
+     */
+    public enum LandmarkSelection implements Labeled {
+        /** uniformly at random */
+        RANDOM("Random"),
+        /** by k-means++ seeding, which spreads the landmarks over the data */
+        KMEANS_PP("k-means++");
+
+        private final String label;
+
+        private LandmarkSelection(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
+    /** seed of the random Fourier features and landmarks, fixed such that executions are reproducible */
+    private static final long RANDOM_SEED = 0x5EEDL;
+
+    /** minimum number of points per task of the bandwidth estimation */
+    private static final int SIGMA_CHUNK_SIZE = 16;
+
+    /** minimum number of test points per task of the truncated engine */
+    private static final int TRUNCATED_CHUNK_SIZE = 64;
+
     private final int numIterations;
 
     private final double kernelSmoothing;
@@ -83,13 +148,29 @@ public class SSAKDE {
 
     private final String defUniverseName;
 
+    private DensityEngine engine = DensityEngine.EXACT;
+
+    private DensityEngine usedEngine;
+
+    private double truncationRadius = 3;
+
+    private double approximationError = 0.01;
+
+    private int numRandomFeatures = 256;
+
+    private int numBandwidthBuckets = 4;
+
+    private int numLandmarks = 2000;
+
+    private LandmarkSelection landmarkSelection = LandmarkSelection.RANDOM;
+
     /**
      * @param _numIterations
      * @param _kernelSmoothing
      * @param _initSigma
      * @param _numNeighbors
      * @param _classes
-     * @param _defUniverseName
+     * @param _defUniverseName name of the universe of the points, shown in the progress
      */
     public SSAKDE(final int _numIterations, final double _kernelSmoothing, final double _initSigma,
                   final int _numNeighbors, final List<String> _classes, final String _defUniverseName) {
@@ -102,117 +183,182 @@ public class SSAKDE {
     }
 
     /**
-     * @param allPoints
-     * @param unknowns
-     * @param kernels
-     * @param monitor
+     * @param _engine how the densities are estimated, {@link DensityEngine#EXACT} by default
      */
-    public void execute(final KDTree<DataPoint> allPoints, final List<DataPoint> unknowns,
-                        final List<DataPoint> kernels, final ExecutionMonitor monitor) {
+    public void setEngine(final DensityEngine _engine) {
+        engine = _engine;
+    }
 
-        // estimate sigmas
+    /**
+     * @return the engine the last execution actually used, which differs from the configured one if it had to fall
+     *         back to {@link DensityEngine#EXACT}, <code>null</code> before the first execution
+     */
+    public DensityEngine usedEngine() {
+        return usedEngine;
+    }
 
-        final HashMap<DataPoint, Double> sigmas = new HashMap<DataPoint, Double>();
-        double normalizationConstant = 0;
-        for (final DataPoint unknown : unknowns) {
-            final double res = calcSigmaFactor(allPoints, unknown);
-            normalizationConstant += res;
-            sigmas.put(unknown, res);
-        }
+    /**
+     * @param _truncationRadius radius of the truncated kernels in multiples of their bandwidth
+     */
+    public void setTruncationRadius(final double _truncationRadius) {
+        truncationRadius = _truncationRadius;
+    }
 
-        for (final DataPoint kernel : kernels) {
-            final double res = calcSigmaFactor(allPoints, kernel);
-            normalizationConstant += res;
-            sigmas.put(kernel, res);
-        }
+    /**
+     * @param _approximationError relative error bound of the densities estimated by {@link DensityEngine#DUAL_TREE}
+     */
+    public void setApproximationError(final double _approximationError) {
+        approximationError = _approximationError;
+    }
 
-        // normalize sigmas and init distribution
-        for (final DataPoint kernel : kernels) {
-            sigmas.put(kernel, (sigmas.get(kernel).doubleValue()) / normalizationConstant * initSigma * unknowns.size());
-            kernel.assignDistributionAt(defUniverseName, 0, initProbDistForLabeled(kernel));
-        }
+    /**
+     * @param numFeatures number of random Fourier features per bandwidth bucket of
+     *            {@link DensityEngine#RANDOM_FEATURES}
+     * @param numBuckets number of bandwidth buckets, the kernels of a bucket share their features
+     */
+    public void setRandomFeatures(final int numFeatures, final int numBuckets) {
+        numRandomFeatures = numFeatures;
+        numBandwidthBuckets = numBuckets;
+    }
 
-        for (final DataPoint unknown : unknowns) {
-            sigmas.put(unknown,
-                       (sigmas.get(unknown).doubleValue()) / normalizationConstant * initSigma * unknowns.size());
-            unknown.assignDistributionAt(defUniverseName, 0, initProbDist(kernels, unknown, sigmas));
+    /**
+     * @param _numLandmarks number of landmarks of {@link DensityEngine#LANDMARKS}, all labeled points are landmarks in
+     *            addition if there are more of them
+     * @param selection how the landmarks are chosen
+     */
+    public void setLandmarks(final int _numLandmarks, final LandmarkSelection selection) {
+        numLandmarks = _numLandmarks;
+        landmarkSelection = selection;
+    }
 
-        }
-        // for multi threading
-        final ThreadPool subPool = ThreadPool.currentPool().createSubPool(100);
-        final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
-        try {
-            for (int iteration = 0; iteration < numIterations; iteration++) {
-                for (final DataPoint u : unknowns) {
-
-                    final Callable<Void> callable = new Callable<Void>() {
-
-                        @Override
-                        public final Void call() {
-                            u.assignDistributionAt(defUniverseName, 1, estimateDensities(unknowns, kernels, u, sigmas));
-                            return null;
+    /**
+     * @param allPoints tree over the indices of the points
+     * @param vectors feature vectors of all points, labeled and unlabeled, row-major
+     * @param dim dimension of the feature vectors
+     * @param partition labeled and unlabeled points
+     * @param classOf index of the class of each labeled point in the classes
+     * @param dists receives the estimated distribution of each point
+     * @param parallel engine to run the density estimation of each iteration on
+     * @param monitor
+     */
+    public void execute(final KDTree<Integer> allPoints, final double[] vectors, final int dim,
+                        final LabelPartition partition, final int[] classOf, final DistributionBuffer dists,
+                        final ParallelRange parallel, final ExecutionMonitor monitor) {
+        final int n = partition.size();
+        final int numClasses = classes.size();
+        final int[] labeled = partition.labeledIndices();
+
+        // estimate sigmas, the partial sums are combined in a fixed order such that the result does not depend on
+        // the number of threads
+        final double[] sigmas = new double[n];
+        final double normalizationConstant =
+                parallel.reduce(n, SIGMA_CHUNK_SIZE, ParallelRange.Reducer.SUM, new ParallelRange.Reduction() {
+                    @Override
+                    public double apply(final int from, final int to) {
+                        double sum = 0;
+                        for (int p = from; p < to; p++) {
+                            sigmas[p] = calcSigmaFactor(allPoints, vector(vectors, dim, p));
+                            sum += sigmas[p];
                         }
-                    };
-
-                    futures.add(subPool.submit(callable));
-                }
-
-                for (final DataPoint point : kernels) {
-                    final Callable<Void> callable = new Callable<Void>() {
+                        return sum;
+                    }
+                });
+
+        // normalize sigmas
+        final int numUnknowns = n - labeled.length;
+        for (int p = 0; p < n; p++) {
+            sigmas[p] = sigmas[p] / normalizationConstant * initSigma * numUnknowns;
+        }
+        final GaussianKernels kernels = GaussianKernels.probe(sigmas, dim);
 
-                        @Override
-                        public final Void call() {
-                            point.assignDistributionAt(defUniverseName, 1,
-                                                       estimateDensities(unknowns, kernels, point, sigmas));
-                            return null;
+        // init distributions
+        final double[] current = dists.current();
+        Arrays.fill(current, 0);
+        for (final int p : labeled) {
+            current[dists.offset(p) + classOf[p]] = 1;
+        }
+        initProbDist(vectors, dim, kernels, labeled, partition, dists);
+
+        // the truncated engine looks up the kernels reaching each test point once, not in every iteration
+        final CSRMatrix weights =
+                engine == DensityEngine.TRUNCATED ? truncatedKernelWeights(allPoints, vectors, dim, kernels, sigmas,
+                                                                           parallel) : null;
+
+        final DualTreeKDE dualTree =
+                engine == DensityEngine.DUAL_TREE ? new DualTreeKDE(vectors, dim, kernels, numClasses,
+                        approximationError) : null;
+
+        final RandomFourierKDE randomFeatures =
+                engine == DensityEngine.RANDOM_FEATURES ? new RandomFourierKDE(vectors, dim, kernels, numClasses,
+                        numRandomFeatures, numBandwidthBuckets, RANDOM_SEED, parallel) : null;
+
+        final DenseKernelKDE kernelMatrix =
+                engine == DensityEngine.KERNEL_MATRIX ? DenseKernelKDE.create(vectors, dim, kernels, numClasses,
+                                                                              parallel) : null;
+        usedEngine = engine == DensityEngine.KERNEL_MATRIX && kernelMatrix == null ? DensityEngine.EXACT : engine;
+
+        final LandmarkKDE landmarks =
+                engine == DensityEngine.LANDMARKS ? new LandmarkKDE(vectors, dim, kernels, labeled, numClasses,
+                        numLandmarks, landmarkSelection == LandmarkSelection.KMEANS_PP, RANDOM_SEED, parallel) : null;
+
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            if (dualTree != null) {
+                dualTree.estimate(dists.current(), dists.next(), parallel);
+            } else if (randomFeatures != null) {
+                randomFeatures.estimate(dists.current(), dists.next(), parallel);
+            } else if (kernelMatrix != null) {
+                kernelMatrix.estimate(dists.current(), dists.next(), parallel);
+            } else if (landmarks != null) {
+                landmarks.estimate(dists.current(), dists.next(), parallel);
+            } else {
+                parallel.forEach(n, weights == null ? 1 : TRUNCATED_CHUNK_SIZE, new ParallelRange.Body() {
+                    @Override
+                    public void apply(final int from, final int to) {
+                        for (int t = from; t < to; t++) {
+                            if (weights == null) {
+                                estimateDensities(vectors, dim, kernels, dists, t);
+                            } else {
+                                estimateDensities(weights, dists, t);
+                            }
                         }
-                    };
-
-                    futures.add(subPool.submit(callable));
-
-                }
-
-                // waiting for results
-                for (final Future<Void> future : futures) {
-                    future.get();
-                }
-
-                // adjust posteriors
-                for (DataPoint unlabeled : unknowns) {
-                    unlabeled.assignDistributionAt(defUniverseName, 0, unlabeled.dist(defUniverseName, 1));
-                }
-
-                for (DataPoint labeled : kernels) {
-                    labeled.assignDistributionAt(defUniverseName,
-                                                 0,
-                                                 Utils.combine(labeled.dist(defUniverseName, 0),
-                                                               labeled.dist(defUniverseName, 1), 1 - kernelSmoothing));
-                }
+                    }
+                });
+            }
 
-                try {
-                    monitor.checkCanceled();
-                } catch (CanceledExecutionException e) {
-                    return;
+            // adjust posteriors: unlabeled points take the estimate, labeled points are smoothed towards it
+            final double[] cur = dists.current();
+            final double[] next = dists.next();
+            for (final int p : labeled) {
+                final int offset = dists.offset(p);
+                for (int c = 0; c < numClasses; c++) {
+                    next[offset + c] = (1 - kernelSmoothing) * cur[offset + c] + kernelSmoothing * next[offset + c];
                 }
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e);
+            dists.swap();
+
+            try {
+                monitor.checkCanceled();
+                monitor.setMessage("Iteration " + (iteration + 1) + " of " + numIterations + " [" + defUniverseName
+                        + "]");
+            } catch (CanceledExecutionException e) {
+                return;
+            }
+        }
+
+        if (landmarks != null) {
+            landmarks.interpolate(dists.current(), parallel);
         }
     }
 
     /**
-     * @param sigmaMap
      * @param tree
-     * @param normalizationConstant
      * @param p
      * @return
      */
-    private double calcSigmaFactor(final KDTree<DataPoint> tree, final DataPoint p) {
+    private double calcSigmaFactor(final KDTree<Integer> tree, final double[] p) {
 
         double sdegree = 0;
-        for (NearestNeighbour<DataPoint> nn : tree.getKNearestNeighbours(p.vector(defUniverseName), numNeighbors)) {
+        for (NearestNeighbour<Integer> nn : tree.getKNearestNeighbours(p, numNeighbors)) {
             final double distance = nn.getDistance();
             sdegree += distance;
         }
@@ -221,85 +367,149 @@ public class SSAKDE {
     }
 
     /**
-     * @param unlabeled
-     * @return
+     * Density estimate at a test point using all kernels.
      */
-    private double[] estimateDensities(final List<DataPoint> unknown, final List<DataPoint> kernels,
-                                       final DataPoint testPoint, final Map<DataPoint, Double> sigmas) {
-
-        final double[] probDistribution = new double[classes.size()];
+    private void estimateDensities(final double[] vectors, final int dim, final GaussianKernels kernels,
+                                   final DistributionBuffer dists, final int testPoint) {
+        final double[] current = dists.current();
+        final double[] next = dists.next();
+        final int numClasses = dists.numClasses();
+        final int out = dists.offset(testPoint);
+        Arrays.fill(next, out, out + numClasses, 0);
 
         double total = 0;
-
-        for (DataPoint p : unknown) {
-            if (unknown == p) {
-                continue;
-            }
-
-            for (int i = 0; i < classes.size(); i++) {
-                final double response =
-                        Utils.gaussRespone(p.vector(defUniverseName), testPoint.vector(defUniverseName), sigmas.get(p));
-
+        for (int p = 0; p < dists.numPoints(); p++) {
+            final double response = kernels.response(p, squaredDistance(vectors, dim, p, testPoint));
+            final int offset = dists.offset(p);
+            for (int i = 0; i < numClasses; i++) {
                 // estimate weightedDist
-                final double weightedDist = p.dist(defUniverseName, 0)[i] * response;
-                probDistribution[i] += weightedDist;
+                final double weightedDist = current[offset + i] * response;
+                next[out + i] += weightedDist;
                 total += weightedDist;
             }
         }
 
-        for (DataPoint p : kernels) {
-            for (int i = 0; i < classes.size(); i++) {
-                final double response =
-                        Utils.gaussRespone(p.vector(defUniverseName), testPoint.vector(defUniverseName), sigmas.get(p));
+        normalize(current, next, out, numClasses, total);
+    }
 
-                // estimate weightedDist
-                final double weightedDist = p.dist(defUniverseName, 0)[i] * response;
-                probDistribution[i] += weightedDist;
-                total += weightedDist;
+    /**
+     * Computes the truncated kernel of every point: its response at all points within
+     * <code>truncationRadius</code> times its bandwidth.
+     *
+     * @return the kernel weights, one row per test point with a column for each kernel reaching it
+     */
+    private CSRMatrix truncatedKernelWeights(final KDTree<Integer> tree, final double[] vectors, final int dim,
+                                             final GaussianKernels kernels, final double[] sigmas,
+                                             final ParallelRange parallel) {
+        final int n = sigmas.length;
+        final int[][] testPoints = new int[n][];
+        final double[][] responses = new double[n][];
+        parallel.forEach(n, TRUNCATED_CHUNK_SIZE, new ParallelRange.Body() {
+            @Override
+            public void apply(final int from, final int to) {
+                for (int p = from; p < to; p++) {
+                    final List<NearestNeighbour<Integer>> reached =
+                            tree.getMaxDistanceNeighbours(vector(vectors, dim, p), truncationRadius * sigmas[p]);
+                    testPoints[p] = new int[reached.size()];
+                    responses[p] = new double[reached.size()];
+                    int k = 0;
+                    for (final NearestNeighbour<Integer> nn : reached) {
+                        final int t = nn.getData();
+                        testPoints[p][k] = t;
+                        responses[p][k++] = kernels.response(p, squaredDistance(vectors, dim, p, t));
+                    }
+                }
             }
-        }
+        });
+
+        // the rows are the kernels so far, each test point needs the kernels reaching it
+        return CSRMatrix.fromRows(n, n, testPoints, responses).transpose();
+    }
 
-        // normalize responses
-        for (int d = 0; d < probDistribution.length; d++) {
-            probDistribution[d] /= total;
+    /**
+     * Density estimate at a test point using the truncated kernel weights.
+     */
+    private static void estimateDensities(final CSRMatrix weights, final DistributionBuffer dists,
+                                          final int testPoint) {
+        final int[] rowPointers = weights.rowPointers();
+        final int[] kernels = weights.columnIndices();
+        final double[] responses = weights.values();
+        final double[] current = dists.current();
+        final double[] next = dists.next();
+        final int numClasses = dists.numClasses();
+        final int out = dists.offset(testPoint);
+        Arrays.fill(next, out, out + numClasses, 0);
+
+        double total = 0;
+        for (int k = rowPointers[testPoint]; k < rowPointers[testPoint + 1]; k++) {
+            final int offset = dists.offset(kernels[k]);
+            for (int i = 0; i < numClasses; i++) {
+                final double weightedDist = current[offset + i] * responses[k];
+                next[out + i] += weightedDist;
+                total += weightedDist;
+            }
         }
 
-        return probDistribution;
+        normalize(current, next, out, numClasses, total);
     }
 
-    /**
-     * @param labeled
-     * @return
+    /*
+     * Normalizes the estimate at the given offset. If no kernel with probability mass reaches the point it keeps its
+     * current estimate.
      */
-    private double[] initProbDistForLabeled(final DataPoint labeled) {
-        final double[] probDistribution = new double[classes.size()];
-        probDistribution[classes.indexOf(labeled.classLabel())] = 1;
-        return probDistribution;
+    private static void normalize(final double[] current, final double[] next, final int offset,
+                                  final int numClasses, final double total) {
+        if (total == 0) {
+            System.arraycopy(current, offset, next, offset, numClasses);
+            return;
+        }
+        for (int d = 0; d < numClasses; d++) {
+            next[offset + d] /= total;
+        }
     }
 
-    private double[] initProbDist(final List<DataPoint> kernels, final DataPoint unlabeled,
-                                  final HashMap<DataPoint, Double> sigmaMap) {
+    private static double[] vector(final double[] vectors, final int dim, final int p) {
+        return Arrays.copyOfRange(vectors, p * dim, (p + 1) * dim);
+    }
 
-        // if we have no labels yet, prob distribution is 1 for known everywhere.
-        if (kernels.size() == 0) {
-            return new double[]{1};
+    private static double squaredDistance(final double[] vectors, final int dim, final int a, final int b) {
+        double res = 0;
+        for (int k = 0; k < dim; k++) {
+            final double diff = vectors[a * dim + k] - vectors[b * dim + k];
+            res += diff * diff;
         }
+        return res;
+    }
 
-        final double[] probDistribution = new double[classes.size()];
-        double total = 0;
-        for (DataPoint kernel : kernels) {
-            final double response =
-                    Utils.gaussRespone(kernel.vector(defUniverseName), unlabeled.vector(defUniverseName),
-                                       sigmaMap.get(kernel));
-            probDistribution[classes.indexOf(kernel.classLabel())] += response;
-            total += response;
-        }
+    /*
+     * Initial distributions of the unlabeled points, estimated from the labeled points only.
+     */
+    private void initProbDist(final double[] vectors, final int dim, final GaussianKernels kernels,
+                              final int[] labeled, final LabelPartition partition, final DistributionBuffer dists) {
+        final double[] current = dists.current();
+        for (final int unlabeled : partition.unlabeledIndices()) {
+            final int out = dists.offset(unlabeled);
+
+            // if we have no labels yet, prob distribution is 1 for known everywhere.
+            if (labeled.length == 0) {
+                if (dists.numClasses() > 0) {
+                    current[out] = 1;
+                }
+                continue;
+            }
 
-        for (int d = 0; d < probDistribution.length; d++) {
-            probDistribution[d] /= total;
-        }
+            double total = 0;
+            for (final int kernel : labeled) {
+                final double response = kernels.response(kernel, squaredDistance(vectors, dim, kernel, unlabeled));
+                for (int c = 0; c < dists.numClasses(); c++) {
+                    current[out + c] += response * current[dists.offset(kernel) + c];
+                }
+                total += response;
+            }
 
-        return probDistribution;
+            for (int d = 0; d < dists.numClasses(); d++) {
+                current[out + d] /= total;
+            }
+        }
     }
-
 }
@@ -7,6 +7,8 @@ import org.knime.core.node.NodeView;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.semisupervised.util.Labels;
 
 /**
  *
@@ -68,6 +70,27 @@ public class SSAKDENodeFactory extends NodeFactory<SSAKDENodeModel> {
 
                 addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createInitSigmaModel(), "Sigma", 0.05));
 
+                addDialogComponent(new DialogComponentStringSelection(SSAKDENodeModel.createEngineModel(),
+                        "Density Estimation", Labels.labels(SSAKDE.DensityEngine.class)));
+
+                addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createTruncationRadiusModel(),
+                        "Truncation Radius (multiples of sigma)", 0.5));
+
+                addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createApproximationErrorModel(),
+                        "Approximation Error (dual-tree)", 0.005));
+
+                addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createNumRandomFeaturesModel(),
+                        "Number of Random Features", 64));
+
+                addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createNumBandwidthBucketsModel(),
+                        "Number of Bandwidth Buckets", 1));
+
+                addDialogComponent(new DialogComponentNumber(SSAKDENodeModel.createNumLandmarksModel(),
+                        "Number of Landmarks", 100));
+
+                addDialogComponent(new DialogComponentStringSelection(SSAKDENodeModel.createLandmarkSelectionModel(),
+                        "Landmark Selection", Labels.labels(SSAKDE.LandmarkSelection.class)));
+
             }
         };
     }
@@ -3,11 +3,11 @@ package org.knime.semisupervised.nodes.ssakde;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.knime.base.util.kdtree.KDTree;
 import org.knime.base.util.kdtree.KDTreeBuilder;
 import org.knime.base.util.kdtree.NearestNeighbour;
 import org.knime.core.data.DataCell;
@@ -16,9 +16,7 @@ import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DoubleValue;
-import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
-import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.StringCell;
@@ -32,21 +30,50 @@ import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.paruni.DataPoint;
 import org.knime.paruni.NodeTools;
+import org.knime.semisupervised.util.DistributionBuffer;
+import org.knime.semisupervised.util.LabelPartition;
+import org.knime.semisupervised.util.Labels;
+import org.knime.semisupervised.util.OptionalSettings;
+import org.knime.semisupervised.util.ParallelRange;
+import org.knime.semisupervised.util.RowIndex;
 
 /**
  * @author dietzc, University of Konstanz
  */
 public class SSAKDENodeModel extends NodeModel {
 
+    // keys of settings added later, older workflows lack them
+
+    private static final String CFG_DENSITY_ENGINE = "density_engine";
+
+    private static final String CFG_TRUNCATION_RADIUS = "truncation_radius";
+
+    private static final String CFG_APPROXIMATION_ERROR = "approximation_error";
+
+    private static final String CFG_NUM_RANDOM_FEATURES = "num_random_features";
+
+    private static final String CFG_BANDWIDTH_BUCKETS = "bandwidth_buckets";
+
+    private static final String CFG_NUM_LANDMARKS = "num_landmarks";
+
+    private static final String CFG_LANDMARK_SELECTION = "landmark_selection";
+
     static final int LABELED_INDEX = 0;
 
     static final int UNLABELED_INDEX = 1;
 
+    /** universe of the feature columns without universe property */
+    static final String DEFAULT_UNIVERSE = "Default";
+
+    /** column property naming the universe of a feature column */
+    static final String UNIVERSE_PROPERTY = "universe_name";
+
     private int m_classIdx;
 
     private SettingsModelString m_classColModel = createClassColModel();
@@ -59,19 +86,26 @@ public class SSAKDENodeModel extends NodeModel {
 
     private SettingsModelDouble m_initSigmaModel = createInitSigmaModel();
 
-    private List<String> m_classLabels;
+    private SettingsModelString m_engineModel = createEngineModel();
+
+    private SettingsModelDouble m_truncationRadiusModel = createTruncationRadiusModel();
+
+    private SettingsModelDouble m_approximationErrorModel = createApproximationErrorModel();
 
-    private ColumnRearranger m_featureSpecUnlabeled;
+    private SettingsModelInteger m_numRandomFeaturesModel = createNumRandomFeaturesModel();
 
-    private ColumnRearranger m_featureSpecLabeled;
+    private SettingsModelInteger m_numBandwidthBucketsModel = createNumBandwidthBucketsModel();
 
-    private ArrayList<DataPoint> m_unlabeledPoints;
+    private SettingsModelInteger m_numLandmarksModel = createNumLandmarksModel();
 
-    private ArrayList<DataPoint> m_labeledPoints;
+    private SettingsModelString m_landmarkSelectionModel = createLandmarkSelectionModel();
+
+    private List<String> m_classLabels;
 
-    private HashMap<RowKey, DataPoint> m_allPoints;
+    /** feature columns of each universe */
+    private Map<String, List<String>> m_universes;
 
-    private KDTree<DataPoint> m_tree;
+    private RowIndex m_rowIndex;
 
     static SettingsModelString createClassColModel() {
         return new SettingsModelString("class_col_idx", "");
@@ -98,6 +132,34 @@ public class SSAKDENodeModel extends NodeModel {
         return new SettingsModelDouble("init_sigma", 0.05);
     }
 
+    static SettingsModelString createEngineModel() {
+        return new SettingsModelString(CFG_DENSITY_ENGINE, SSAKDE.DensityEngine.EXACT.label());
+    }
+
+    static SettingsModelDouble createTruncationRadiusModel() {
+        return new SettingsModelDoubleBounded(CFG_TRUNCATION_RADIUS, 3.0, 0, Double.MAX_VALUE);
+    }
+
+    static SettingsModelDouble createApproximationErrorModel() {
+        return new SettingsModelDoubleBounded(CFG_APPROXIMATION_ERROR, 0.01, 0, 1);
+    }
+
+    static SettingsModelInteger createNumRandomFeaturesModel() {
+        return new SettingsModelIntegerBounded(CFG_NUM_RANDOM_FEATURES, 256, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelInteger createNumBandwidthBucketsModel() {
+        return new SettingsModelIntegerBounded(CFG_BANDWIDTH_BUCKETS, 4, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelInteger createNumLandmarksModel() {
+        return new SettingsModelIntegerBounded(CFG_NUM_LANDMARKS, 2000, 1, Integer.MAX_VALUE);
+    }
+
+    static SettingsModelString createLandmarkSelectionModel() {
+        return new SettingsModelString(CFG_LANDMARK_SELECTION, SSAKDE.LandmarkSelection.RANDOM.label());
+    }
+
     static SettingsModelInteger createNumNeighborsModel() {
         return new SettingsModelIntegerBounded("neighbors", 5, -1, Integer.MAX_VALUE);
     }
@@ -123,18 +185,25 @@ public class SSAKDENodeModel extends NodeModel {
 
         m_classIdx = NodeTools.silentOptionalAutoColumnSelection(inSpecs[1], m_classColModel, StringValue.class);
 
-        ArrayList<String> unlabeledIndices = new ArrayList<String>();
-        for (int i = 0; i < inSpecs[UNLABELED_INDEX].getNumColumns(); i++) {
-            if (inSpecs[UNLABELED_INDEX].getColumnSpec(i).getType().isCompatible(DoubleValue.class)) {
-                unlabeledIndices.add(inSpecs[UNLABELED_INDEX].getColumnSpec(i).getName());
+        // the numeric columns of the unlabeled table, grouped by universe, are the features. the labeled table must
+        // contain them as well
+        m_universes = new LinkedHashMap<String, List<String>>();
+        for (final DataColumnSpec columnSpec : inSpecs[UNLABELED_INDEX]) {
+            if (!columnSpec.getType().isCompatible(DoubleValue.class)) {
+                continue;
             }
-        }
-
-        ArrayList<String> labeledIndices = new ArrayList<String>();
-        for (int i = 0; i < inSpecs[LABELED_INDEX].getNumColumns(); i++) {
-            if (inSpecs[LABELED_INDEX].getColumnSpec(i).getType().isCompatible(DoubleValue.class)) {
-                labeledIndices.add(inSpecs[LABELED_INDEX].getColumnSpec(i).getName());
+            if (!inSpecs[LABELED_INDEX].containsName(columnSpec.getName())) {
+                throw new InvalidSettingsException("Feature column '" + columnSpec.getName()
+                        + "' is missing in the labeled table");
+            }
+            String universe = columnSpec.getProperties().getProperty(UNIVERSE_PROPERTY);
+            if (universe == null) {
+                universe = DEFAULT_UNIVERSE;
+            }
+            if (!m_universes.containsKey(universe)) {
+                m_universes.put(universe, new ArrayList<String>());
             }
+            m_universes.get(universe).add(columnSpec.getName());
         }
 
         m_classLabels = new ArrayList<String>();
@@ -142,14 +211,6 @@ public class SSAKDENodeModel extends NodeModel {
             m_classLabels.add(((StringCell)value).getStringValue());
         }
 
-        m_featureSpecUnlabeled =
-                createFilterRearranger(inSpecs[UNLABELED_INDEX],
-                                       unlabeledIndices.toArray(new String[unlabeledIndices.size()]));
-
-        m_featureSpecLabeled =
-                createFilterRearranger(inSpecs[LABELED_INDEX],
-                                       labeledIndices.toArray(new String[labeledIndices.size()]));
-
         return new DataTableSpec[]{createResSpec()};
     }
 
@@ -166,53 +227,110 @@ public class SSAKDENodeModel extends NodeModel {
                             .silentOptionalAutoColumnSelection(inData[1].getSpec(), m_classColModel, StringValue.class);
         }
 
-        // extract the points
-        m_allPoints = new HashMap<RowKey, DataPoint>();
-
-        m_unlabeledPoints = new ArrayList<DataPoint>();
-
-        m_labeledPoints = new ArrayList<DataPoint>();
-
-        // store all points in unlabeled
-        extractUnlabeledPoints(inData[UNLABELED_INDEX], m_featureSpecUnlabeled, exec);
-
-        extractUnlabeledPoints(inData[LABELED_INDEX], m_featureSpecLabeled, exec);
-
-        KDTreeBuilder<DataPoint> treeBuilder =
-                new KDTreeBuilder<DataPoint>(m_unlabeledPoints.get(0).vector(DataPoint.DEFAULT_UNIVERSE).length);
-
-        // since now all points are stored in unlabeled
-        for (final DataPoint unlabeled : m_unlabeledPoints) {
-            treeBuilder.addPattern(unlabeled.vector(DataPoint.DEFAULT_UNIVERSE), unlabeled);
+        // extract the feature vectors of all universes in one pass over each table, every row key gets a dense index,
+        // rows contained in both tables are kept once
+        final int maxRows = inData[UNLABELED_INDEX].getRowCount() + inData[LABELED_INDEX].getRowCount();
+        m_rowIndex = new RowIndex(maxRows);
+        final String[] universes = m_universes.keySet().toArray(new String[m_universes.size()]);
+        final double[][] vectors = new double[universes.length][];
+        for (int u = 0; u < universes.length; u++) {
+            final int dim = m_universes.get(universes[u]).size();
+            final long length = (long)maxRows * dim;
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many values in universe " + universes[u] + ": " + maxRows
+                        + " rows times " + dim + " columns exceed " + Integer.MAX_VALUE);
+            }
+            vectors[u] = new double[(int)length];
         }
-
-        m_tree = treeBuilder.buildTree();
+        extractPoints(inData[UNLABELED_INDEX], universes, vectors, exec);
+        extractPoints(inData[LABELED_INDEX], universes, vectors, exec);
+        final int numPoints = m_rowIndex.size();
 
         // add the newly labeled rows
-        handleNewlyLabeledKeys(inData[LABELED_INDEX], exec);
-
-        SSAKDE algo =
-                new SSAKDE(m_numIterations.getIntValue(), m_kernelSmoothingModel.getDoubleValue(),
-                        m_initSigmaModel.getDoubleValue(), m_numNeighborsModel.getIntValue(), m_classLabels,
-                        DataPoint.DEFAULT_UNIVERSE);
-
-        algo.execute(m_tree, m_unlabeledPoints, m_labeledPoints, exec);
+        final LabelPartition partition = new LabelPartition(numPoints);
+        final int[] classOf = handleNewlyLabeledKeys(inData[LABELED_INDEX], partition);
+
+        // the universes run concurrently, each on its own tree, and share the threads of one pool
+        final DistributionBuffer[] dists = new DistributionBuffer[universes.length];
+        final SSAKDE[] algos = new SSAKDE[universes.length];
+        final ParallelRange parallel = new ParallelRange();
+        try {
+            parallel.forEach(universes.length, 1, new ParallelRange.Body() {
+                @Override
+                public void apply(final int from, final int to) {
+                    for (int u = from; u < to; u++) {
+                        final int dim = m_universes.get(universes[u]).size();
+                        final KDTreeBuilder<Integer> treeBuilder = new KDTreeBuilder<Integer>(dim);
+                        for (int i = 0; i < numPoints; i++) {
+                            treeBuilder.addPattern(Arrays.copyOfRange(vectors[u], i * dim, (i + 1) * dim), i);
+                        }
+
+                        final SSAKDE algo = createAlgorithm(universes[u]);
+                        algos[u] = algo;
+                        dists[u] = new DistributionBuffer(numPoints, m_classLabels.size());
+                        algo.execute(treeBuilder.buildTree(), vectors[u], dim, partition, classOf, dists[u],
+                                     parallel, exec);
+                    }
+                }
+            });
+        } finally {
+            parallel.shutdown();
+        }
+        exec.checkCanceled();
+
+        final SSAKDE.DensityEngine engine =
+                Labels.fromLabel(SSAKDE.DensityEngine.class, m_engineModel.getStringValue());
+        for (final SSAKDE algo : algos) {
+            if (algo.usedEngine() != engine) {
+                setWarningMessage("The kernel matrix does not fit into the memory, the densities were computed "
+                        + "without it");
+            }
+        }
 
+        final int numClasses = m_classLabels.size();
         final BufferedDataContainer container = exec.createDataContainer(createResSpec());
-        for (final DataPoint unlabeled : m_unlabeledPoints) {
-            DoubleCell[] classes = new DoubleCell[m_classLabels.size()];
-
-            for (int i = 0; i < m_classLabels.size(); i++) {
-                classes[i] = new DoubleCell(unlabeled.dist(DataPoint.DEFAULT_UNIVERSE, 0)[i]);
+        for (final int idx : partition.unlabeledIndices()) {
+            final DoubleCell[] cells;
+            if (universes.length == 1) {
+                cells = new DoubleCell[numClasses];
+                for (int i = 0; i < numClasses; i++) {
+                    cells[i] = new DoubleCell(dists[0].get(idx, i));
+                }
+            } else {
+                // the distribution of each universe followed by their mean
+                cells = new DoubleCell[(universes.length + 1) * numClasses];
+                for (int i = 0; i < numClasses; i++) {
+                    double sum = 0;
+                    for (int u = 0; u < universes.length; u++) {
+                        sum += dists[u].get(idx, i);
+                        cells[u * numClasses + i] = new DoubleCell(dists[u].get(idx, i));
+                    }
+                    cells[universes.length * numClasses + i] = new DoubleCell(sum / universes.length);
+                }
             }
-            container.addRowToTable(new DefaultRow(unlabeled.rowKey(), classes));
+            container.addRowToTable(new DefaultRow(m_rowIndex.key(idx), cells));
         }
 
         container.close();
 
+        m_rowIndex = null;
+
         return new BufferedDataTable[]{container.getTable()};
     }
 
+    private SSAKDE createAlgorithm(final String universe) {
+        final SSAKDE algo =
+                new SSAKDE(m_numIterations.getIntValue(), m_kernelSmoothingModel.getDoubleValue(),
+                        m_initSigmaModel.getDoubleValue(), m_numNeighborsModel.getIntValue(), m_classLabels, universe);
+        algo.setEngine(Labels.fromLabel(SSAKDE.DensityEngine.class, m_engineModel.getStringValue()));
+        algo.setTruncationRadius(m_truncationRadiusModel.getDoubleValue());
+        algo.setApproximationError(m_approximationErrorModel.getDoubleValue());
+        algo.setRandomFeatures(m_numRandomFeaturesModel.getIntValue(), m_numBandwidthBucketsModel.getIntValue());
+        algo.setLandmarks(m_numLandmarksModel.getIntValue(),
+                          Labels.fromLabel(SSAKDE.LandmarkSelection.class, m_landmarkSelectionModel.getStringValue()));
+        return algo;
+    }
+
     /**
      * Estimates sigma for the current kernel according to method of Wang et. al in
      * "Semi-Supervised-Kernel-Density-Estimation".
@@ -234,28 +352,50 @@ public class SSAKDENodeModel extends NodeModel {
         return sparsenessDegree;
     }
 
-    private void extractUnlabeledPoints(final BufferedDataTable table, final ColumnRearranger rearranger,
-                                        final ExecutionContext exec) throws CanceledExecutionException {
-
-        final Iterator<DataRow> rowFeatureIt = exec.createColumnRearrangeTable(table, rearranger, exec).iterator();
-        final Iterator<DataRow> rowCompleteIt = table.iterator();
-
-        while (rowFeatureIt.hasNext()) {
-            DataRow row = rowCompleteIt.next();
-            DataPoint p = new DataPoint(rowFeatureIt.next(), null, null);
+    /*
+     * Reads the feature vectors of all universes of the rows not seen before.
+     */
+    private void extractPoints(final BufferedDataTable table, final String[] universes, final double[][] vectors,
+                               final ExecutionContext exec) throws CanceledExecutionException {
+        final DataTableSpec spec = table.getDataTableSpec();
+        final int[][] columns = new int[universes.length][];
+        for (int u = 0; u < universes.length; u++) {
+            final List<String> names = m_universes.get(universes[u]);
+            columns[u] = new int[names.size()];
+            for (int k = 0; k < columns[u].length; k++) {
+                columns[u][k] = spec.findColumnIndex(names.get(k));
+            }
+        }
 
-            m_unlabeledPoints.add(p);
-            m_allPoints.put(row.getKey(), p);
+        for (final DataRow row : table) {
+            final int idx = m_rowIndex.intern(row.getKey());
+            if (idx != m_rowIndex.size() - 1) {
+                // contained in both tables
+                continue;
+            }
+            for (int u = 0; u < universes.length; u++) {
+                final int dim = columns[u].length;
+                for (int k = 0; k < dim; k++) {
+                    final DataCell cell = row.getCell(columns[u][k]);
+                    if (cell.isMissing()) {
+                        throw new IllegalArgumentException("Missing value in feature column '"
+                                + spec.getColumnSpec(columns[u][k]).getName() + "' of row " + row.getKey());
+                    }
+                    vectors[u][idx * dim + k] = ((DoubleValue)cell).getDoubleValue();
+                }
+            }
+            exec.checkCanceled();
         }
     }
 
-    private void handleNewlyLabeledKeys(final BufferedDataTable table, final ExecutionContext exec) {
-
-        final Iterator<DataRow> rowCompleteIt = table.iterator();
+    /*
+     * Marks the rows of the table as labeled and returns the index of the class of each labeled row.
+     */
+    private int[] handleNewlyLabeledKeys(final BufferedDataTable table, final LabelPartition partition) {
+        final int[] classOf = new int[partition.size()];
 
         String clazz = null;
-        while (rowCompleteIt.hasNext()) {
-            DataRow row = rowCompleteIt.next();
+        for (final DataRow row : table) {
             if (m_classIdx != -1) {
 
                 clazz = ((StringValue)row.getCell(m_classIdx)).getStringValue();
@@ -263,33 +403,37 @@ public class SSAKDENodeModel extends NodeModel {
                     m_classLabels.add(clazz);
                 }
             }
-            DataPoint dataPoint = m_allPoints.get(row.getKey());
-            dataPoint.setLabel(clazz);
-
-            m_labeledPoints.add(dataPoint);
-            m_unlabeledPoints.remove(dataPoint);
+            final int idx = m_rowIndex.indexOf(row.getKey());
+            partition.label(idx);
+            classOf[idx] = m_classLabels.indexOf(clazz);
         }
+        return classOf;
     }
 
     private DataTableSpec createResSpec() {
-        DataColumnSpec[] dataColumnSpecs = new DataColumnSpec[m_classLabels.size()];
+        if (m_universes.size() <= 1) {
+            DataColumnSpec[] dataColumnSpecs = new DataColumnSpec[m_classLabels.size()];
 
-        for (int i = 0; i < m_classLabels.size(); i++) {
-            dataColumnSpecs[i] = new DataColumnSpecCreator(m_classLabels.get(i), DoubleCell.TYPE).createSpec();
+            for (int i = 0; i < m_classLabels.size(); i++) {
+                dataColumnSpecs[i] = new DataColumnSpecCreator(m_classLabels.get(i), DoubleCell.TYPE).createSpec();
+            }
+
+            return new DataTableSpec(dataColumnSpecs);
         }
 
+        final List<String> universes = new ArrayList<String>(m_universes.keySet());
+        universes.add("Mean");
+        final DataColumnSpec[] dataColumnSpecs = new DataColumnSpec[universes.size() * m_classLabels.size()];
+        int i = 0;
+        for (final String universe : universes) {
+            for (final String clazz : m_classLabels) {
+                dataColumnSpecs[i++] =
+                        new DataColumnSpecCreator(clazz + " [" + universe + "]", DoubleCell.TYPE).createSpec();
+            }
+        }
         return new DataTableSpec(dataColumnSpecs);
     }
 
-    /*
-     * Simple column filter
-     */
-    private ColumnRearranger createFilterRearranger(final DataTableSpec in, final String... columns) {
-        ColumnRearranger c = new ColumnRearranger(in);
-        c.keepOnly(columns);
-        return c;
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -326,6 +470,13 @@ public class SSAKDENodeModel extends NodeModel {
         m_initSigmaModel.saveSettingsTo(settings);
         m_kernelSmoothingModel.saveSettingsTo(settings);
         m_numIterations.saveSettingsTo(settings);
+        m_engineModel.saveSettingsTo(settings);
+        m_truncationRadiusModel.saveSettingsTo(settings);
+        m_approximationErrorModel.saveSettingsTo(settings);
+        m_numRandomFeaturesModel.saveSettingsTo(settings);
+        m_numBandwidthBucketsModel.saveSettingsTo(settings);
+        m_numLandmarksModel.saveSettingsTo(settings);
+        m_landmarkSelectionModel.saveSettingsTo(settings);
     }
 
     /**
@@ -338,6 +489,13 @@ public class SSAKDENodeModel extends NodeModel {
         m_initSigmaModel.validateSettings(settings);
         m_kernelSmoothingModel.validateSettings(settings);
         m_numIterations.validateSettings(settings);
+        OptionalSettings.validate(m_engineModel, CFG_DENSITY_ENGINE, settings);
+        OptionalSettings.validate(m_truncationRadiusModel, CFG_TRUNCATION_RADIUS, settings);
+        OptionalSettings.validate(m_approximationErrorModel, CFG_APPROXIMATION_ERROR, settings);
+        OptionalSettings.validate(m_numRandomFeaturesModel, CFG_NUM_RANDOM_FEATURES, settings);
+        OptionalSettings.validate(m_numBandwidthBucketsModel, CFG_BANDWIDTH_BUCKETS, settings);
+        OptionalSettings.validate(m_numLandmarksModel, CFG_NUM_LANDMARKS, settings);
+        OptionalSettings.validate(m_landmarkSelectionModel, CFG_LANDMARK_SELECTION, settings);
     }
 
     /**
@@ -350,5 +508,12 @@ public class SSAKDENodeModel extends NodeModel {
         m_initSigmaModel.loadSettingsFrom(settings);
         m_kernelSmoothingModel.loadSettingsFrom(settings);
         m_numIterations.loadSettingsFrom(settings);
+        OptionalSettings.load(m_engineModel, CFG_DENSITY_ENGINE, settings);
+        OptionalSettings.load(m_truncationRadiusModel, CFG_TRUNCATION_RADIUS, settings);
+        OptionalSettings.load(m_approximationErrorModel, CFG_APPROXIMATION_ERROR, settings);
+        OptionalSettings.load(m_numRandomFeaturesModel, CFG_NUM_RANDOM_FEATURES, settings);
+        OptionalSettings.load(m_numBandwidthBucketsModel, CFG_BANDWIDTH_BUCKETS, settings);
+        OptionalSettings.load(m_numLandmarksModel, CFG_NUM_LANDMARKS, settings);
+        OptionalSettings.load(m_landmarkSelectionModel, CFG_LANDMARK_SELECTION, settings);
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+import java.util.Arrays;
+
+/**
+ * Sparse matrix in compressed sparse row (CSR) layout. The non-zeros of row <code>i</code> are stored at the positions
+ * <code>rowPointers()[i]</code> (inclusive) to <code>rowPointers()[i + 1]</code> (exclusive) of the column index and
+ * value arrays.
+ *
+ * @author agent
+ */
+public final class CSRMatrix {
+
+    private final int numRows;
+
+    private final int numCols;
+
+    private final int[] rowPointers;
+
+    private final int[] columnIndices;
+
+    private final double[] values;
+
+    /**
+     * @param _numRows number of rows
+     * @param _numCols number of columns
+     * @param _rowPointers row offsets, length <code>numRows + 1</code>
+     * @param _columnIndices column index of each non-zero
+     * @param _values value of each non-zero
+     */
+    public CSRMatrix(final int _numRows, final int _numCols, final int[] _rowPointers, final int[] _columnIndices,
+                     final double[] _values) {
+        if (_rowPointers.length != _numRows + 1) {
+            throw new IllegalArgumentException("Expected " + (_numRows + 1) + " row pointers but got "
+                    + _rowPointers.length);
+        }
+        if (_columnIndices.length < _rowPointers[_numRows] || _values.length < _rowPointers[_numRows]) {
+            throw new IllegalArgumentException("Index or value array too short for " + _rowPointers[_numRows]
+                    + " non-zeros");
+        }
+        this.numRows = _numRows;
+        this.numCols = _numCols;
+        this.rowPointers = _rowPointers;
+        this.columnIndices = _columnIndices;
+        this.values = _values;
+    }
+
+    /**
+     * Creates a matrix from a layout where every row owns <code>degree</code> consecutive slots, of which the first
+     * <code>rowLengths[i]</code> are used. The arrays are used as they are if all rows are full, otherwise they are
+     * compacted.
+     *
+     * @param numRows number of rows
+     * @param numCols number of columns
+     * @param degree number of slots per row
+     * @param columnIndices column indices, length <code>numRows * degree</code>
+     * @param values values, length <code>numRows * degree</code>
+     * @param rowLengths number of used slots per row
+     * @return the matrix
+     */
+    public static CSRMatrix fromFixedDegree(final int numRows, final int numCols, final int degree,
+                                            final int[] columnIndices, final double[] values, final int[] rowLengths) {
+        final int[] rowPointers = new int[numRows + 1];
+        boolean full = true;
+        for (int i = 0; i < numRows; i++) {
+            rowPointers[i + 1] = rowPointers[i] + rowLengths[i];
+            full &= rowLengths[i] == degree;
+        }
+
+        if (full) {
+            return new CSRMatrix(numRows, numCols, rowPointers, columnIndices, values);
+        }
+
+        final int nnz = rowPointers[numRows];
+        final int[] compactIndices = new int[nnz];
+        final double[] compactValues = new double[nnz];
+        for (int i = 0; i < numRows; i++) {
+            System.arraycopy(columnIndices, i * degree, compactIndices, rowPointers[i], rowLengths[i]);
+            System.arraycopy(values, i * degree, compactValues, rowPointers[i], rowLengths[i]);
+        }
+        return new CSRMatrix(numRows, numCols, rowPointers, compactIndices, compactValues);
+    }
+
+    /**
+     * Creates a matrix from separate column index and value arrays per row.
+     *
+     * @param numRows number of rows
+     * @param numCols number of columns
+     * @param columnIndices column indices of each row
+     * @param values values of each row, same lengths as the column indices
+     * @return the matrix
+     */
+    public static CSRMatrix fromRows(final int numRows, final int numCols, final int[][] columnIndices,
+                                     final double[][] values) {
+        final int[] rowPointers = new int[numRows + 1];
+        for (int i = 0; i < numRows; i++) {
+            rowPointers[i + 1] = rowPointers[i] + columnIndices[i].length;
+        }
+
+        final int[] compactIndices = new int[rowPointers[numRows]];
+        final double[] compactValues = new double[rowPointers[numRows]];
+        for (int i = 0; i < numRows; i++) {
+            System.arraycopy(columnIndices[i], 0, compactIndices, rowPointers[i], columnIndices[i].length);
+            System.arraycopy(values[i], 0, compactValues, rowPointers[i], values[i].length);
+        }
+        return new CSRMatrix(numRows, numCols, rowPointers, compactIndices, compactValues);
+    }
+
+    /**
+     * @return the transposed matrix, the non-zeros of each of its rows are sorted by column
+     */
+    public CSRMatrix transpose() {
+        final int nnz = nnz();
+        final int[] tRowPointers = new int[numCols + 1];
+        for (int k = 0; k < nnz; k++) {
+            tRowPointers[columnIndices[k] + 1]++;
+        }
+        for (int j = 0; j < numCols; j++) {
+            tRowPointers[j + 1] += tRowPointers[j];
+        }
+
+        final int[] fill = new int[numCols];
+        System.arraycopy(tRowPointers, 0, fill, 0, numCols);
+        final int[] tColumnIndices = new int[nnz];
+        final double[] tValues = new double[nnz];
+        for (int i = 0; i < numRows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                final int pos = fill[columnIndices[k]]++;
+                tColumnIndices[pos] = i;
+                tValues[pos] = values[k];
+            }
+        }
+        return new CSRMatrix(numCols, numRows, tRowPointers, tColumnIndices, tValues);
+    }
+
+    /**
+     * Splits the rows into contiguous parts of about the same work, where a row costs its number of non-zeros plus
+     * one. Rows with many non-zeros hence get parts of their own instead of stalling the part they fall into.
+     *
+     * @param numParts maximal number of parts
+     * @return row offsets of the parts, part <code>p</code> covers the rows <code>[offsets[p], offsets[p + 1])</code>.
+     *         Empty parts are dropped, hence there may be less than <code>numParts</code>.
+     */
+    public int[] partitionRows(final int numParts) {
+        final long work = (long)nnz() + numRows;
+        final int[] offsets = new int[Math.max(1, numParts) + 1];
+        int parts = 0;
+        int row = 0;
+        for (int p = 1; p <= numParts && row < numRows; p++) {
+            final long target = work * p / numParts;
+            if (workBefore(row) >= target) {
+                // the last part already took the share of this one
+                continue;
+            }
+            // first row starting at or behind the target, or the one before if it starts closer to it
+            int lo = row + 1;
+            int hi = numRows;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (workBefore(mid) < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo - 1 > row && target - workBefore(lo - 1) < workBefore(lo) - target) {
+                lo--;
+            }
+            row = lo;
+            offsets[++parts] = row;
+        }
+        offsets[parts] = numRows;
+        return Arrays.copyOf(offsets, parts + 1);
+    }
+
+    private long workBefore(final int row) {
+        return (long)rowPointers[row] + row;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numCols() {
+        return numCols;
+    }
+
+    /**
+     * @return number of stored non-zeros
+     */
+    public int nnz() {
+        return rowPointers[numRows];
+    }
+
+    /**
+     * @return row offsets into {@link #columnIndices()} and {@link #values()}, length <code>numRows + 1</code>
+     */
+    public int[] rowPointers() {
+        return rowPointers;
+    }
+
+    /**
+     * @return column index of each non-zero
+     */
+    public int[] columnIndices() {
+        return columnIndices;
+    }
+
+    /**
+     * @return value of each non-zero
+     */
+    public double[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.knime.core.data.DataRow;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Writes the rows <code>0</code> to <code>numRows - 1</code> to a container. Worker threads create the rows in
+ * chunks, the calling thread adds them to the container in order. Only a bounded number of chunks is in flight,
+ * hence the created rows never pile up next to the growing table.
+ *
+ * @author agent
+ */
+public abstract class ChunkedRowWriter {
+
+    /**
+     * Default number of rows per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final int chunkSize;
+
+    /**
+     * Creates a writer with chunks of {@link #DEFAULT_CHUNK_SIZE} rows.
+     */
+    protected ChunkedRowWriter() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param _chunkSize number of rows per chunk
+     */
+    protected ChunkedRowWriter(final int _chunkSize) {
+        this.chunkSize = Math.max(1, _chunkSize);
+    }
+
+    /**
+     * Creates a row, called concurrently by the worker threads.
+     *
+     * @param i index of the row
+     * @return the row
+     */
+    protected abstract DataRow createRow(int i);
+
+    /**
+     * Creates all rows and adds them in order to the container. The container is not closed.
+     *
+     * @param numRows number of rows
+     * @param container container to add the rows to
+     * @param parallel engine to create the rows on
+     * @param exec to report progress and check for cancellation
+     * @throws CanceledExecutionException
+     * @throws InterruptedException
+     * @throws ExecutionException if a row could not be created
+     */
+    public void write(final int numRows, final BufferedDataContainer container, final ParallelRange parallel,
+                      final ExecutionMonitor exec) throws CanceledExecutionException, InterruptedException,
+            ExecutionException {
+        final int numChunks = (numRows + chunkSize - 1) / chunkSize;
+        final int window = 2 * parallel.parallelism();
+        final ArrayDeque<Future<DataRow[]>> inFlight = new ArrayDeque<Future<DataRow[]>>(window);
+
+        int submitted = 0;
+        int written = 0;
+        try {
+            while (written < numChunks) {
+                while (submitted < numChunks && inFlight.size() < window) {
+                    inFlight.add(parallel.submit(createChunk(submitted * chunkSize,
+                                                             Math.min(numRows, (submitted + 1) * chunkSize))));
+                    submitted++;
+                }
+
+                final DataRow[] rows = inFlight.poll().get();
+                final int from = written * chunkSize;
+                for (final DataRow row : rows) {
+                    container.addRowToTable(row);
+                }
+                written++;
+
+                exec.checkCanceled();
+                exec.setProgress(written / (double)numChunks, "Writing rows " + (from + rows.length) + "/"
+                        + numRows);
+            }
+        } finally {
+            for (final Future<DataRow[]> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Callable<DataRow[]> createChunk(final int from, final int to) {
+        return new Callable<DataRow[]>() {
+            @Override
+            public DataRow[] call() {
+                final DataRow[] rows = new DataRow[to - from];
+                for (int i = from; i < to; i++) {
+                    rows[i - from] = createRow(i);
+                }
+                return rows;
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+/**
+ * Class distributions of a fixed set of points, stored row-major in two contiguous <code>double[]</code> buffers. One
+ * buffer holds the distributions of the current iteration, the other one receives the distributions of the next
+ * iteration. {@link #swap()} exchanges both without copying or allocating.
+ *
+ * @author agent
+ */
+public final class DistributionBuffer {
+
+    private final int numPoints;
+
+    private final int numClasses;
+
+    private double[] current;
+
+    private double[] next;
+
+    /**
+     * @param _numPoints number of points
+     * @param _numClasses number of classes
+     */
+    public DistributionBuffer(final int _numPoints, final int _numClasses) {
+        this.numPoints = _numPoints;
+        this.numClasses = _numClasses;
+        this.current = new double[_numPoints * _numClasses];
+        this.next = new double[_numPoints * _numClasses];
+    }
+
+    /**
+     * @return number of points
+     */
+    public int numPoints() {
+        return numPoints;
+    }
+
+    /**
+     * @return number of classes
+     */
+    public int numClasses() {
+        return numClasses;
+    }
+
+    /**
+     * @param point index of the point
+     * @return offset of the distribution of the point in {@link #current()} and {@link #next()}
+     */
+    public int offset(final int point) {
+        return point * numClasses;
+    }
+
+    /**
+     * @return distributions of the current iteration
+     */
+    public double[] current() {
+        return current;
+    }
+
+    /**
+     * @return distributions of the next iteration
+     */
+    public double[] next() {
+        return next;
+    }
+
+    /**
+     * @param point index of the point
+     * @param clazz index of the class
+     * @return current probability of the class for the point
+     */
+    public double get(final int point, final int clazz) {
+        return current[point * numClasses + clazz];
+    }
+
+    /**
+     * Makes the next distributions the current ones. The former current buffer is reused for the next iteration.
+     */
+    public void swap() {
+        final double[] tmp = current;
+        current = next;
+        next = tmp;
+    }
+
+    /**
+     * Frees the buffer of the next distributions once no more iterations follow. {@link #next()} returns
+     * <code>null</code> afterwards and {@link #swap()} must not be called anymore.
+     */
+    public void releaseNext() {
+        next = null;
+    }
+}
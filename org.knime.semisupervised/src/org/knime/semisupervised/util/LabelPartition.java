@@ -0,0 +1,143 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+import java.util.BitSet;
+
+/**
+ * Partition of the dense row indices <code>0</code> to <code>size - 1</code> (see {@link RowIndex}) into labeled
+ * and unlabeled rows.
+ *
+ * @author agent
+ */
+public final class LabelPartition {
+
+    private final int size;
+
+    private final BitSet labeled;
+
+    private int numLabeled;
+
+    /**
+     * Creates a partition with all rows unlabeled.
+     *
+     * @param _size number of rows
+     */
+    public LabelPartition(final int _size) {
+        this.size = _size;
+        this.labeled = new BitSet(_size);
+    }
+
+    /**
+     * @param idx row to mark as labeled
+     */
+    public void label(final int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Row index " + idx + " not in [0, " + size + ")");
+        }
+        if (!labeled.get(idx)) {
+            labeled.set(idx);
+            numLabeled++;
+        }
+    }
+
+    /**
+     * @param idx a row
+     * @return <code>true</code> if the row is labeled
+     */
+    public boolean isLabeled(final int idx) {
+        return labeled.get(idx);
+    }
+
+    /**
+     * @return the labeled rows, must not be modified
+     */
+    public BitSet labeled() {
+        return labeled;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of labeled rows
+     */
+    public int numLabeled() {
+        return numLabeled;
+    }
+
+    /**
+     * @return the labeled rows in ascending order
+     */
+    public int[] labeledIndices() {
+        final int[] res = new int[numLabeled];
+        int k = 0;
+        for (int i = labeled.nextSetBit(0); i >= 0; i = labeled.nextSetBit(i + 1)) {
+            res[k++] = i;
+        }
+        return res;
+    }
+
+    /**
+     * @return the unlabeled rows in ascending order
+     */
+    public int[] unlabeledIndices() {
+        final int[] res = new int[size - numLabeled];
+        int k = 0;
+        for (int i = labeled.nextClearBit(0); i < size; i = labeled.nextClearBit(i + 1)) {
+            res[k++] = i;
+        }
+        return res;
+    }
+}
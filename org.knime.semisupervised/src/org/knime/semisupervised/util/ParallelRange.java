@@ -0,0 +1,668 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.util.ThreadPool;
+
+/**
+ * Range-partitioned parallel loops. An index space <code>[0, size)</code> is split into at most {@link #MAX_CHUNKS}
+ * contiguous chunks which are processed by one task each. The partitioning only depends on the size of the index
+ * space and the requested minimal chunk size, never on the number of threads or the {@link Backend}, hence
+ * reductions combine their partial results always in the same order and are deterministic.
+ * <p>
+ * Every instance owns its threads, it is meant to be created per execution and {@link #shutdown() shut down}
+ * afterwards. The instance counts the chunks it ran, see {@link #statistics()}.
+ *
+ * @author agent
+ */
+public final class ParallelRange {
+
+    /**
+     * Upper bound of the number of chunks (and hence tasks) per loop.
+     */
+    public static final int MAX_CHUNKS = 1024;
+
+    /**
+     * Number of bytes a chunk should touch to stay in the (L2) cache.
+     */
+    public static final int CACHE_BYTES = 256 * 1024;
+
+    /**
+     * Body of a parallel loop.
+     */
+    public interface Body {
+        /**
+         * Processes the indices <code>from</code> (inclusive) to <code>to</code> (exclusive).
+         *
+         * @param from first index
+         * @param to end index
+         */
+        void apply(int from, int to);
+    }
+
+    /**
+     * Body of a parallel reduction.
+     */
+    public interface Reduction {
+        /**
+         * Processes the indices <code>from</code> (inclusive) to <code>to</code> (exclusive).
+         *
+         * @param from first index
+         * @param to end index
+         * @return partial result of the chunk
+         */
+        double apply(int from, int to);
+    }
+
+    /**
+     * Operators to combine the partial results of a {@link Reduction}.
+     */
+    public enum Reducer {
+        /** sum of the partial results */
+        SUM,
+        /** maximum of the partial results */
+        MAX;
+
+        double combine(final double a, final double b) {
+            return this == SUM ? a + b : Math.max(a, b);
+        }
+    }
+
+    /**
+     * Threads the chunks run on.
+     */
+    public enum Backend implements Labeled {
+        /** own work-stealing pool, nested loops are split among its threads */
+        FORK_JOIN("Fork/join pool"),
+        /** sub pool of the KNIME thread pool, shares the threads (and their limit) with the other nodes */
+        THREAD_POOL("KNIME thread pool"),
+        /** all chunks on the calling thread, no scheduling overhead for tiny inputs */
+        CALLER_RUNS("Calling thread");
+
+        private final String label;
+
+        private Backend(final String _label) {
+            this.label = _label;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Counters of the chunks run so far. Times are in nanoseconds.
+     */
+    public static final class Statistics {
+
+        private final long tasks;
+
+        private final long taskNanos;
+
+        private final long maxTaskNanos;
+
+        private final long waitNanos;
+
+        private final int maxBusyThreads;
+
+        private final int maxQueueDepth;
+
+        Statistics(final long _tasks, final long _taskNanos, final long _maxTaskNanos, final long _waitNanos,
+                   final int _maxBusyThreads, final int _maxQueueDepth) {
+            this.tasks = _tasks;
+            this.taskNanos = _taskNanos;
+            this.maxTaskNanos = _maxTaskNanos;
+            this.waitNanos = _waitNanos;
+            this.maxBusyThreads = _maxBusyThreads;
+            this.maxQueueDepth = _maxQueueDepth;
+        }
+
+        /**
+         * @return number of chunks run
+         */
+        public long tasks() {
+            return tasks;
+        }
+
+        /**
+         * @return summed run time of all chunks
+         */
+        public long taskNanos() {
+            return taskNanos;
+        }
+
+        /**
+         * @return run time of the slowest chunk
+         */
+        public long maxTaskNanos() {
+            return maxTaskNanos;
+        }
+
+        /**
+         * @return summed time the chunks waited between the start of their loop and their own start
+         */
+        public long waitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * @return largest number of threads which ran a chunk at the same time
+         */
+        public int maxBusyThreads() {
+            return maxBusyThreads;
+        }
+
+        /**
+         * @return largest number of chunks which waited to be run at the same time
+         */
+        public int maxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            final long n = Math.max(1, tasks);
+            return String.format("%d tasks, latency %.3f ms (max %.3f ms), wait %.3f ms, %d busy threads, "
+                    + "queue depth %d", tasks, taskNanos / 1e6 / n, maxTaskNanos / 1e6, waitNanos / 1e6 / n,
+                                 maxBusyThreads, maxQueueDepth);
+        }
+    }
+
+    private final Backend backend;
+
+    private final int parallelism;
+
+    private final ForkJoinPool forkJoinPool;
+
+    private final ThreadPool threadPool;
+
+    private final AtomicLong tasks = new AtomicLong();
+
+    private final AtomicLong taskNanos = new AtomicLong();
+
+    private final AtomicLong maxTaskNanos = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private final AtomicInteger busyThreads = new AtomicInteger();
+
+    private final AtomicInteger maxBusyThreads = new AtomicInteger();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    // number of chunks on the stack of the current thread, a thread running nested loops is busy only once
+    private final ThreadLocal<int[]> chunkDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Creates a fork/join pool with as many threads as KNIME is configured to use.
+     */
+    public ParallelRange() {
+        this(KNIMEConstants.GLOBAL_THREAD_POOL.getMaxThreads());
+    }
+
+    /**
+     * @param parallelism number of worker threads of a fork/join pool
+     */
+    public ParallelRange(final int parallelism) {
+        this(Backend.FORK_JOIN, parallelism);
+    }
+
+    /**
+     * @param _backend threads to run on
+     * @param _parallelism maximal number of threads running chunks at the same time, ignored for
+     *            {@link Backend#CALLER_RUNS}. Values below one stand for as many threads as KNIME is configured to
+     *            use.
+     */
+    public ParallelRange(final Backend _backend, final int _parallelism) {
+        this.backend = _backend;
+        if (_backend == Backend.CALLER_RUNS) {
+            this.parallelism = 1;
+        } else {
+            this.parallelism = _parallelism > 0 ? _parallelism : KNIMEConstants.GLOBAL_THREAD_POOL.getMaxThreads();
+        }
+
+        this.forkJoinPool = _backend == Backend.FORK_JOIN ? new ForkJoinPool(Math.max(1, parallelism)) : null;
+        if (_backend == Backend.THREAD_POOL) {
+            final ThreadPool current = ThreadPool.currentPool();
+            this.threadPool =
+                    (current != null ? current : KNIMEConstants.GLOBAL_THREAD_POOL).createSubPool(parallelism);
+        } else {
+            this.threadPool = null;
+        }
+    }
+
+    /**
+     * @return the threads the chunks run on
+     */
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * @return maximal number of threads running chunks at the same time
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return number of threads running a chunk right now
+     */
+    public int busyThreads() {
+        return busyThreads.get();
+    }
+
+    /**
+     * @return number of chunks of running loops which did not start yet
+     */
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return counters of all chunks run so far
+     */
+    public Statistics statistics() {
+        return new Statistics(tasks.get(), taskNanos.get(), maxTaskNanos.get(), waitNanos.get(),
+                maxBusyThreads.get(), maxQueueDepth.get());
+    }
+
+    /**
+     * @param bytesPerIndex approximate number of bytes touched when processing one index
+     * @return minimal chunk size such that a chunk roughly fits into the cache
+     */
+    public static int cacheSizedChunk(final int bytesPerIndex) {
+        return Math.max(1, CACHE_BYTES / Math.max(1, bytesPerIndex));
+    }
+
+    /**
+     * Runs the body on all chunks of <code>[0, size)</code> and waits for their completion. Exceptions thrown by the
+     * body are rethrown.
+     *
+     * @param size size of the index space
+     * @param minChunkSize minimal number of indices per chunk
+     * @param body the loop body
+     */
+    public void forEach(final int size, final int minChunkSize, final Body body) {
+        if (size <= 0) {
+            return;
+        }
+        final int chunkSize = chunkSize(size, minChunkSize);
+        run(new Loop(numChunks(size, chunkSize), chunkSize, size, new Reduction() {
+            @Override
+            public double apply(final int from, final int to) {
+                body.apply(from, to);
+                return 0;
+            }
+        }, null));
+    }
+
+    /**
+     * Runs the reduction on all chunks of <code>[0, size)</code> and combines their results in chunk order.
+     *
+     * @param size size of the index space
+     * @param minChunkSize minimal number of indices per chunk
+     * @param reducer how to combine the partial results
+     * @param body the reduction body
+     * @return the combined result, <code>0</code> if the index space is empty
+     */
+    public double reduce(final int size, final int minChunkSize, final Reducer reducer, final Reduction body) {
+        if (size <= 0) {
+            return 0;
+        }
+        final int chunkSize = chunkSize(size, minChunkSize);
+        final double[] partials = new double[numChunks(size, chunkSize)];
+        run(new Loop(partials.length, chunkSize, size, body, partials));
+
+        double res = partials[0];
+        for (int i = 1; i < partials.length; i++) {
+            res = reducer.combine(res, partials[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Submits a single task. The task is run right away on the calling thread for {@link Backend#CALLER_RUNS}.
+     *
+     * @param task the task
+     * @return future of the result of the task
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        switch (backend) {
+            case FORK_JOIN:
+                return forkJoinPool.submit(task);
+            case THREAD_POOL:
+                return threadPool.submit(task);
+            default:
+                final FutureTask<T> future = new FutureTask<T>(task);
+                future.run();
+                return future;
+        }
+    }
+
+    /**
+     * Stops the worker threads. Running loops are completed.
+     */
+    public void shutdown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
+        if (threadPool != null) {
+            threadPool.shutdown();
+        }
+    }
+
+    private void run(final Loop loop) {
+        updateMax(maxQueueDepth, queueDepth.addAndGet(loop.numChunks));
+        switch (backend) {
+            case FORK_JOIN:
+                final ChunkTask task = new ChunkTask(loop, 0, loop.numChunks);
+                if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == forkJoinPool) {
+                    // nested loop, e.g. a loop started from within another loop of this pool
+                    task.invoke();
+                } else {
+                    forkJoinPool.invoke(task);
+                }
+                break;
+            case THREAD_POOL:
+                runOnThreadPool(loop);
+                break;
+            default:
+                for (int c = 0; c < loop.numChunks; c++) {
+                    loop.runChunk(c);
+                }
+        }
+    }
+
+    /*
+     * The calling thread and up to parallelism - 1 helpers of the pool take the chunks one after another. Helpers
+     * which did not start when the calling thread is done are cancelled, hence a nested loop started from a busy pool
+     * never waits for a free thread.
+     */
+    private void runOnThreadPool(final Loop loop) {
+        final Worker worker = new Worker(loop);
+
+        final List<Helper> helpers = new ArrayList<Helper>();
+        for (int i = 1; i < Math.min(parallelism, loop.numChunks); i++) {
+            final Helper helper = new Helper(worker);
+            helper.future = threadPool.submit(helper);
+            helpers.add(helper);
+        }
+        try {
+            worker.call();
+        } finally {
+            final List<Future<Void>> started = new ArrayList<Future<Void>>();
+            for (final Helper helper : helpers) {
+                if (helper.started.compareAndSet(false, true)) {
+                    helper.future.cancel(false);
+                } else {
+                    started.add(helper.future);
+                }
+            }
+            if (!started.isEmpty()) {
+                await(started);
+            }
+        }
+    }
+
+    private void await(final List<Future<Void>> futures) {
+        try {
+            // waiting does not occupy a thread of the pool
+            threadPool.runInvisible(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (final Future<Void> future : futures) {
+                        future.get();
+                    }
+                    return null;
+                }
+            });
+        } catch (final ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof ExecutionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Parallel loop failed", cause);
+        }
+    }
+
+    private static void updateMax(final AtomicInteger max, final int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private static int chunkSize(final int size, final int minChunkSize) {
+        final int chunks = Math.min(MAX_CHUNKS, (size + Math.max(1, minChunkSize) - 1) / Math.max(1, minChunkSize));
+        return (size + chunks - 1) / chunks;
+    }
+
+    private static int numChunks(final int size, final int chunkSize) {
+        return (size + chunkSize - 1) / chunkSize;
+    }
+
+    /*
+     * The chunks of one forEach or reduce call.
+     */
+    private final class Loop {
+
+        private final int numChunks;
+
+        private final int chunkSize;
+
+        private final int size;
+
+        private final Reduction body;
+
+        private final double[] partials;
+
+        private final long started = System.nanoTime();
+
+        Loop(final int _numChunks, final int _chunkSize, final int _size, final Reduction _body,
+             final double[] _partials) {
+            this.numChunks = _numChunks;
+            this.chunkSize = _chunkSize;
+            this.size = _size;
+            this.body = _body;
+            this.partials = _partials;
+        }
+
+        void runChunk(final int chunk) {
+            final long start = System.nanoTime();
+            queueDepth.decrementAndGet();
+            final int[] depth = chunkDepth.get();
+            if (depth[0]++ == 0) {
+                updateMax(maxBusyThreads, busyThreads.incrementAndGet());
+            }
+            try {
+                final int from = chunk * chunkSize;
+                final double res = body.apply(from, Math.min(size, from + chunkSize));
+                if (partials != null) {
+                    partials[chunk] = res;
+                }
+            } finally {
+                if (--depth[0] == 0) {
+                    busyThreads.decrementAndGet();
+                }
+                final long nanos = System.nanoTime() - start;
+                tasks.incrementAndGet();
+                taskNanos.addAndGet(nanos);
+                updateMax(maxTaskNanos, nanos);
+                waitNanos.addAndGet(start - started);
+            }
+        }
+    }
+
+    /*
+     * Takes the chunks of a loop one after another until none are left.
+     */
+    private static final class Worker implements Callable<Void> {
+
+        private final Loop loop;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        Worker(final Loop _loop) {
+            this.loop = _loop;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                int chunk;
+                while ((chunk = next.getAndIncrement()) < loop.numChunks) {
+                    loop.runChunk(chunk);
+                }
+            } catch (final RuntimeException | Error e) {
+                // let the other workers stop after their current chunk
+                next.set(loop.numChunks);
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /*
+     * Runs the worker unless the calling thread of the loop claimed it first. Cancelling the future is not enough, a
+     * running task can be cancelled as well.
+     */
+    private static final class Helper implements Callable<Void> {
+
+        private final Worker worker;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Future<Void> future;
+
+        Helper(final Worker _worker) {
+            this.worker = _worker;
+        }
+
+        @Override
+        public Void call() {
+            return started.compareAndSet(false, true) ? worker.call() : null;
+        }
+    }
+
+    /*
+     * Splits the chunks [fromChunk, toChunk) in halves until a single chunk remains.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Loop loop;
+
+        private final int fromChunk;
+
+        private final int toChunk;
+
+        ChunkTask(final Loop _loop, final int _fromChunk, final int _toChunk) {
+            this.loop = _loop;
+            this.fromChunk = _fromChunk;
+            this.toChunk = _toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                final int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new ChunkTask(loop, fromChunk, mid), new ChunkTask(loop, mid, toChunk));
+                return;
+            }
+            loop.runChunk(fromChunk);
+        }
+    }
+}
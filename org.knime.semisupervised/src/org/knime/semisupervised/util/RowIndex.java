@@ -0,0 +1,123 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C) 2003 - 2014
+ *  University of Konstanz, Germany and
+ *  KNIME GmbH, Konstanz, Germany
+ *  Website: http://www.knime.org; Email: contact@knime.org
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ *
+ * Created on Oct 18, 2026 by agent
+ */
+package org.knime.semisupervised.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.knime.core.data.RowKey;
+
+/**
+ * Interns row keys to dense indices <code>0, 1, 2, ...</code> in the order they are first seen. All further
+ * bookkeeping of a node can then use plain <code>int</code> indices and arrays instead of maps keyed by rows or
+ * points.
+ *
+ * @author agent
+ */
+public final class RowIndex {
+
+    private final HashMap<RowKey, Integer> indices;
+
+    private final ArrayList<RowKey> keys;
+
+    /**
+     * Creates an empty index.
+     */
+    public RowIndex() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize expected number of rows
+     */
+    public RowIndex(final int expectedSize) {
+        this.indices = new HashMap<RowKey, Integer>(Math.max(16, 2 * expectedSize));
+        this.keys = new ArrayList<RowKey>(expectedSize);
+    }
+
+    /**
+     * @param key the row key
+     * @return the index of the key, a new index if the key has not been seen before
+     */
+    public int intern(final RowKey key) {
+        final Integer idx = indices.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        final int newIdx = keys.size();
+        indices.put(key, newIdx);
+        keys.add(key);
+        return newIdx;
+    }
+
+    /**
+     * @param key the row key
+     * @return the index of the key or <code>-1</code> if it has not been interned
+     */
+    public int indexOf(final RowKey key) {
+        final Integer idx = indices.get(key);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * @param idx an index
+     * @return the row key of the index
+     */
+    public RowKey key(final int idx) {
+        return keys.get(idx);
+    }
+
+    /**
+     * @return number of interned keys
+     */
+    public int size() {
+        return keys.size();
+    }
+}